@@ -1,133 +1,682 @@
-import java.awt.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 
 public class AIPlayer {
-    public enum Difficulty { EASY, MEDIUM, HARD }
+    /** Search depth of an exhaustive search */
+    public static final int UNLIMITED_DEPTH = Integer.MAX_VALUE;
+
+    /**
+     * Difficulty levels. Each one maps to a per-move time budget and a maximum search depth,
+     * so its latency is predictable on every board size. On the classic 3x3 board EASY
+     * plays randomly and HARD answers from the perfect-play table. MCTS uses Monte Carlo
+     * Tree Search instead of alpha-beta, and only the time budget.
+     */
+    public enum Difficulty {
+        EASY(100, 1), MEDIUM(300, 3), HARD(1000, UNLIMITED_DEPTH), MCTS(1000, UNLIMITED_DEPTH);
+
+        private final long timeBudgetMillis;
+        private final int maxDepth;
+
+        Difficulty(long timeBudgetMillis, int maxDepth) {
+            this.timeBudgetMillis = timeBudgetMillis;
+            this.maxDepth = maxDepth;
+        }
+
+        public long getTimeBudgetMillis() {
+            return timeBudgetMillis;
+        }
+
+        public int getMaxDepth() {
+            return maxDepth;
+        }
+    }
+
+    /** Score of a win on the spot; a win found depth plies deeper scores WIN_SCORE - depth */
+    static final int WIN_SCORE = 30000;
+    /** Scores at least this large (in absolute value) are wins or losses, not heuristic estimates */
+    static final int WIN_THRESHOLD = WIN_SCORE - 1000;
+    /** Heuristic scores are clamped to this, well clear of WIN_THRESHOLD */
+    private static final int HEURISTIC_LIMIT = 20000;
+    /** Boards larger than this only search cells near the seeds already played */
+    private static final int MAX_FULL_WIDTH_CELLS = 16;
+    /** Distance (in cells) from a played seed within which moves are considered on large boards */
+    private static final int NEAR_RADIUS = 2;
+    /** How many nodes are searched between two looks at the clock */
+    private static final int CLOCK_CHECK_INTERVAL = 1024;
+    /** Workers shared by every parallel search; setThreads() decides how many one search uses */
+    private static final ForkJoinPool SEARCH_POOL =
+            new ForkJoinPool(Runtime.getRuntime().availableProcessors());
 
     private final Board board;
     private final Seed aiSeed;
     private final Seed opponentSeed;
     private final Difficulty difficulty;
 
+    /** Entries kept by default in each AIPlayer's transposition table */
+    private static final int TABLE_CAPACITY = 1 << 16;
+
+    /** Transposition table and hashes, kept for the life of this AIPlayer so later moves reuse them */
+    private final TranspositionTable table = new TranspositionTable(TABLE_CAPACITY);
+    private final ZobristHash hash;
+
+    /** Cells by decreasing number of lines through them (center first), ties by index */
+    private final int[] cellOrder;
+    /** Ordered moves of each ply, and scratch space used while ordering them */
+    private final int[][] moveBuffer;
+    private final int[] blockScratch, restScratch;
+    /** Every winLength-cell line of the board, and the heuristic weight of k own seeds in one */
+    private final int[][] windows;
+    private final int[] windowWeights;
+    /** Number of seeds within NEAR_RADIUS of each cell, kept up to date during a search */
+    private final int[] nearCount;
+    private final boolean nearMovesOnly;
+
+    /** Budget of each getAIMove() call; a node budget of 0 means no node limit */
+    private long timeBudgetMillis;
+    private long nodeBudget;
+    private int maxDepth;
+    /** Number of threads splitting the root moves; 1 searches on the calling thread */
+    private int threads = 1;
+    /** One searcher per thread, each with its own board copy and table, created on first use */
+    private AIPlayer[] helpers;
+    /** Monte Carlo searcher of the MCTS difficulty, kept so its trees are reused between moves */
+    private MonteCarloSearch monteCarlo;
+
+    /** Source of every random choice: EASY's moves on 3x3 and the MCTS playouts */
+    private SplittableRandom random = new SplittableRandom();
+
+    /** Searcher whose cancel signal stops this one: itself, or the owner of a helper */
+    private AIPlayer owner = this;
+    /** Polled during a search, which stops soon after it returns true */
+    private volatile BooleanSupplier cancelSignal = () -> false;
+
+    /** State of the running search */
+    private long deadline;
+    private boolean aborted;
+    private boolean horizonReached;
+
+    /** Search statistics of the last getAIMove() call */
+    private long nodesVisited;
+    private long elapsedNanos;
+    private int lastScore;
+    private int completedDepth;
+    private Move lastMove;
+
     public AIPlayer(Board board, Seed aiSeed, Difficulty difficulty) {
         this.board = board;
         this.aiSeed = aiSeed;
         this.opponentSeed = (aiSeed == Seed.CROSS) ? Seed.NOUGHT : Seed.CROSS;
         this.difficulty = difficulty;
+
+        int cells = board.getCellCount();
+        hash = new ZobristHash(board.getRows(), board.getCols());
+        cellOrder = java.util.stream.IntStream.range(0, cells).boxed()
+                .sorted(Comparator.comparingInt((Integer i) -> -board.linesThrough(i)).thenComparingInt(i -> i))
+                .mapToInt(Integer::intValue).toArray();
+        moveBuffer = new int[cells + 1][cells];
+        blockScratch = new int[cells];
+        restScratch = new int[cells];
+
+        java.util.List<int[]> lines = new ArrayList<>();
+        int rows = board.getRows(), cols = board.getCols(), k = board.getWinLength();
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                for (int[] d : Board.DIRECTIONS) {
+                    int endRow = row + (k - 1) * d[0], endCol = col + (k - 1) * d[1];
+                    if (endRow < rows && endCol >= 0 && endCol < cols) {
+                        int[] line = new int[k];
+                        for (int i = 0; i < k; i++) {
+                            line[i] = board.indexOf(row + i * d[0], col + i * d[1]);
+                        }
+                        lines.add(line);
+                    }
+                }
+            }
+        }
+        windows = lines.toArray(new int[0][]);
+        windowWeights = new int[k + 1];
+        for (int count = 1; count <= k; count++) {
+            windowWeights[count] = 1 << (2 * (count - 1));  // 1, 4, 16, 64, ...
+        }
+        nearCount = new int[cells];
+        nearMovesOnly = cells > MAX_FULL_WIDTH_CELLS;
+
+        setBudget(difficulty.getTimeBudgetMillis(), 0, difficulty.getMaxDepth());
+    }
+
+    /** Override the difficulty's budget: time per move, nodes per move (0 = no limit) and depth */
+    public void setBudget(long timeBudgetMillis, long nodeBudget, int maxDepth) {
+        this.timeBudgetMillis = timeBudgetMillis;
+        this.nodeBudget = nodeBudget;
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Draw every random choice from the given generator. With one stream per game, split
+     * from a seeded generator, a game is reproducible from the seed (given node budgets
+     * rather than time budgets, and newGame() before it).
+     */
+    public void setRandom(SplittableRandom random) {
+        this.random = random;
+    }
+
+    /**
+     * Forget everything learned in earlier games (transposition table and MCTS trees), so
+     * the next game plays as it would with a new AIPlayer
+     */
+    public void newGame() {
+        table.clear();
+        if (helpers != null) {
+            for (AIPlayer helper : helpers) {
+                if (helper != null) helper.table.clear();
+            }
+        }
+        if (monteCarlo != null) {
+            monteCarlo.newGame();
+        }
+    }
+
+    /** Split the root moves of budgeted searches over this many threads (1 = sequential) */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, Math.min(threads, SEARCH_POOL.getParallelism()));
+    }
+
+    /**
+     * Signal polled by the budgeted searches (every CLOCK_CHECK_INTERVAL nodes); once it
+     * returns true, getAIMove() returns the best move found so far. Give each task its own
+     * signal (for example an AtomicBoolean's get) so a cancelled task can never be revived.
+     */
+    public void setCancelSignal(BooleanSupplier cancelSignal) {
+        this.cancelSignal = cancelSignal;
+    }
+
+    /** Does the cancel signal say stop? */
+    public boolean isCancelled() {
+        return cancelSignal.getAsBoolean();
+    }
+
+    public Move getAIMove() {
+        long start = System.nanoTime();
+        nodesVisited = 0;
+        completedDepth = 0;
+        Move move;
+        if (board.isClassic() && difficulty == Difficulty.EASY) {
+            move = getRandomMove();
+        } else if (board.isClassic() && difficulty == Difficulty.HARD) {
+            move = perfectMove();
+        } else if (difficulty == Difficulty.MCTS) {
+            move = monteCarloMove(start);
+        } else {
+            move = iterativeDeepeningMove(start);
+        }
+        elapsedNanos = System.nanoTime() - start;
+        lastMove = move;
+        return move;
+    }
+
+    /** Move returned by the last getAIMove() call */
+    public Move getLastMove() {
+        return lastMove;
+    }
+
+    /** Number of random playouts run by the last MCTS getAIMove() call */
+    public long getPlayouts() {
+        return (monteCarlo == null) ? 0 : monteCarlo.getPlayouts();
+    }
+
+    /** Random playouts per second of the last MCTS getAIMove() call, over all threads */
+    public double getPlayoutsPerSecond() {
+        return (monteCarlo == null) ? 0 : monteCarlo.getPlayoutsPerSecond();
+    }
+
+    /** Depth of the deepest search iteration completed by the last getAIMove() call */
+    public int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    /** Score of the last searched move from the AI's point of view (positive: the AI wins) */
+    public int getLastScore() {
+        return lastScore;
+    }
+
+    /** Number of positions searched by the last getAIMove() call */
+    public long getNodesVisited() {
+        return nodesVisited;
     }
 
-    public Point getAIMove() {
-        return switch (difficulty) {
-            case EASY -> getRandomMove();
-            case MEDIUM -> (Math.random() < 0.5) ? getRandomMove() : minimaxMove();
-            case HARD -> minimaxMove();
-        };
+    /** Wall-clock time of the last getAIMove() call, in nanoseconds */
+    public long getElapsedNanos() {
+        return elapsedNanos;
     }
 
-    private Point getRandomMove() {
-        java.util.List<Point> emptyCells = new java.util.ArrayList<>();
-        for (int row = 0; row < Board.ROWS; row++) {
-            for (int col = 0; col < Board.COLS; col++) {
-                if (board.cells[row][col].content == Seed.NO_SEED) {
-                    emptyCells.add(new Point(row, col));
+    private Move getRandomMove() {
+        int empties = board.emptyCount();
+        if (empties == 0) return new Move(0, 0);  // fallback
+        // Pick the n-th set bit of the empty masks
+        int n = random.nextInt(empties);
+        for (int word = 0; word < board.wordCount(); word++) {
+            long empty = board.emptyBits(word);
+            int count = Long.bitCount(empty);
+            if (n < count) {
+                for (; n > 0; n--) {
+                    empty &= empty - 1;
                 }
+                return toMove((word << 6) + Long.numberOfTrailingZeros(empty));
             }
+            n -= count;
+        }
+        return new Move(0, 0);
+    }
+
+    private Move toMove(int index) {
+        return new Move(index / board.getCols(), index % board.getCols());
+    }
+
+
+    /** Best move from the precomputed table, searching only if the table is unavailable */
+    private Move perfectMove() {
+        Move move = PerfectPlayTable.lookup(board, aiSeed);
+        if (move != null) {
+            lastScore = PerfectPlayTable.scoreOf(board, aiSeed);
+            return move;
+        }
+        return minimaxMove();
+    }
+
+    /** Best move by an exhaustive search, bypassing the table (used to generate and check it) */
+    Move searchMove() {
+        return minimaxMove();
+    }
+
+    /** Exhaustive alpha-beta search, with no budget */
+    private Move minimaxMove() {
+        deadline = Long.MAX_VALUE;
+        prepareSearch();
+        int bestIndex = searchRoot(UNLIMITED_DEPTH, -1, false);
+        completedDepth = board.emptyCount();
+        if (bestIndex < 0) return new Move(-1, -1);
+        return toMove(bestIndex);
+    }
+
+    /**
+     * Iterative deepening: search 1, 2, 3, ... plies deep until the time or node budget
+     * runs out, each iteration trying the previous best move first. The best move of the
+     * deepest completed iteration is played; an unfinished iteration is thrown away.
+     */
+    private Move iterativeDeepeningMove(long start) {
+        deadline = (timeBudgetMillis > 0) ? start + timeBudgetMillis * 1_000_000L : Long.MAX_VALUE;
+        prepareSearch();
+        int bestIndex = -1;
+        int bestScore = 0;
+        int depthLimit = Math.min(maxDepth, board.emptyCount());
+        for (int depth = 1; depth <= depthLimit; depth++) {
+            horizonReached = false;
+            int index = (threads > 1) ? searchRootParallel(depth, bestIndex) : searchRoot(depth, bestIndex, true);
+            if (index < 0) break;  // out of budget
+            bestIndex = index;
+            bestScore = lastScore;
+            completedDepth = depth;
+            // Nothing left to learn: the whole tree was seen, or the result is forced
+            if (!horizonReached || Math.abs(bestScore) >= WIN_THRESHOLD) break;
+        }
+        if (bestIndex < 0) {
+            // Not even one ply fitted in the budget, play the first move in search order
+            if (orderMoves(aiSeed, opponentSeed, moveBuffer[0]) == 0) return new Move(-1, -1);
+            bestIndex = moveBuffer[0][0];
         }
-        if (emptyCells.isEmpty()) return new Point(0, 0);  // fallback
-        return emptyCells.get(new Random().nextInt(emptyCells.size()));
+        lastScore = bestScore;
+        return toMove(bestIndex);
     }
 
+    /**
+     * Candidate moves of the current position in search order, most promising first
+     * (on large boards only the cells near a played seed). Returns the number of moves.
+     */
+    int candidateMoves(int[] moves) {
+        prepareSearch();
+        return orderMoves(aiSeed, opponentSeed, moves);
+    }
 
-    private Point minimaxMove() {
+    /** Most visited move of a Monte Carlo search within the time budget (node budget = playouts) */
+    private Move monteCarloMove(long start) {
+        if (monteCarlo == null) {
+            monteCarlo = new MonteCarloSearch(aiSeed, SEARCH_POOL.getParallelism());
+        }
+        long deadline = (timeBudgetMillis > 0) ? start + timeBudgetMillis * 1_000_000L : Long.MAX_VALUE;
+        if (timeBudgetMillis <= 0 && nodeBudget <= 0) {
+            deadline = start + difficulty.getTimeBudgetMillis() * 1_000_000L;  // never run unbounded
+        }
+        int index = monteCarlo.search(board, deadline, nodeBudget, threads, SEARCH_POOL, cancelSignal, random);
+        nodesVisited = monteCarlo.getPlayouts();
+        if (index < 0) return new Move(-1, -1);
+        return toMove(index);
+    }
+
+    /** Reset the per-search state from the current board */
+    private void prepareSearch() {
+        table.newSearch();
+        hash.reset(board);
+        aborted = false;
+        Arrays.fill(nearCount, 0);
+        for (int index = 0; index < board.getCellCount(); index++) {
+            if (!board.isEmpty(index)) {
+                updateNear(index, 1);
+            }
+        }
+    }
+
+    /**
+     * Search every root move depthLimit plies deep, trying firstMove (if any) first.
+     * Ties are broken towards the lowest cell index (row-major), the same move plain
+     * minimax would pick: a move before the current best only needs to equal its score,
+     * so it is searched one point lower. Returns the best cell index, or -1 if the search
+     * ran out of budget (only possible when budgeted).
+     */
+    private int searchRoot(int depthLimit, int firstMove, boolean budgeted) {
         int bestScore = Integer.MIN_VALUE;
-        Point bestMove = new Point(-1, -1);
-
-        for (int row = 0; row < Board.ROWS; row++) {
-            for (int col = 0; col < Board.COLS; col++) {
-                if (board.cells[row][col].content == Seed.NO_SEED) {
-                    board.cells[row][col].content = aiSeed;
-                    int score = minimax(0, false);
-                    board.cells[row][col].content = Seed.NO_SEED;
-
-                    if (score > bestScore) {
-                        bestScore = score;
-                        bestMove = new Point(row, col);
-                    }
+        int bestIndex = -1;
+
+        int[] moves = moveBuffer[0];
+        int count = orderMoves(aiSeed, opponentSeed, moves);
+        moveToFront(moves, count, firstMove);
+        for (int i = 0; i < count; i++) {
+            int index = moves[i];
+            int alpha = (bestIndex < 0) ? Integer.MIN_VALUE
+                    : (index < bestIndex) ? bestScore - 1 : bestScore;
+            play(aiSeed, index);
+            int score = alphaBeta(0, depthLimit - 1, false, alpha, Integer.MAX_VALUE, index, budgeted);
+            undo(aiSeed, index);
+            if (aborted) {
+                return -1;
+            }
+
+            if (score > bestScore || (score == bestScore && index < bestIndex)) {
+                bestScore = score;
+                bestIndex = index;
+            }
+        }
+        lastScore = bestScore;
+        return bestIndex;
+    }
+
+    /**
+     * Root split over the helpers: the first (most promising) move is searched alone to
+     * get a bound, then the remaining moves are handed out one at a time to whichever
+     * helper is free. A move is searched with alpha one below the best score so far, so a
+     * fail-low move can never tie the best, and every candidate's score is exact. The pick
+     * (best score, lowest index on ties) is therefore the same as searchRoot() at equal depth.
+     * Returns the best cell index, or -1 if the search ran out of budget.
+     */
+    private int searchRootParallel(int depthLimit, int firstMove) {
+        int[] moves = moveBuffer[0].clone();
+        int count = orderMoves(aiSeed, opponentSeed, moves);
+        if (count == 0) return -1;
+        moveToFront(moves, count, firstMove);
+
+        if (helpers == null) {
+            helpers = new AIPlayer[SEARCH_POOL.getParallelism()];
+        }
+        for (int i = 0; i < threads; i++) {
+            if (helpers[i] == null) {
+                helpers[i] = new AIPlayer(new Board(board.getRows(), board.getCols(), board.getWinLength()),
+                        aiSeed, difficulty);
+            }
+            AIPlayer helper = helpers[i];
+            helper.owner = this;
+            helper.board.copyFrom(board);
+            helper.deadline = deadline;
+            helper.nodeBudget = (nodeBudget > 0) ? Math.max(1, nodeBudget / threads) : 0;
+            helper.nodesVisited = 0;
+            helper.horizonReached = false;
+            helper.prepareSearch();
+        }
+
+        int[] scores = new int[count];
+        scores[0] = helpers[0].rootMoveScore(moves[0], depthLimit, Integer.MIN_VALUE);
+        AtomicInteger best = new AtomicInteger(scores[0]);
+        AtomicInteger next = new AtomicInteger(1);
+        java.util.List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            AIPlayer helper = helpers[i];
+            tasks.add(() -> {
+                for (int m; !helper.aborted && (m = next.getAndIncrement()) < count; ) {
+                    int score = helper.rootMoveScore(moves[m], depthLimit, best.get() - 1);
+                    scores[m] = score;
+                    best.accumulateAndGet(score, Math::max);
                 }
+                return null;
+            });
+        }
+        if (!helpers[0].aborted) {
+            SEARCH_POOL.invokeAll(tasks);
+        }
+
+        boolean anyAborted = false;
+        for (int i = 0; i < threads; i++) {
+            nodesVisited += helpers[i].nodesVisited;
+            horizonReached |= helpers[i].horizonReached;
+            anyAborted |= helpers[i].aborted;
+        }
+        if (anyAborted) {
+            return -1;
+        }
+        int bestIndex = -1;
+        int bestScore = Integer.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            if (scores[i] > bestScore || (scores[i] == bestScore && moves[i] < bestIndex)) {
+                bestScore = scores[i];
+                bestIndex = moves[i];
             }
         }
-        return bestMove;
+        lastScore = bestScore;
+        return bestIndex;
     }
 
-    private int minimax(int depth, boolean isMaximizing) {
-        State result = evaluateBoard();
-        if (result != State.PLAYING) {
-            return switch (result) {
-                case CROSS_WON -> (aiSeed == Seed.CROSS) ? 10 - depth : depth - 10;
-                case NOUGHT_WON -> (aiSeed == Seed.NOUGHT) ? 10 - depth : depth - 10;
-                case DRAW -> 0;
-                default -> 0;
-            };
+    /** Full search of one root move on this (helper) searcher, failing soft below alpha */
+    private int rootMoveScore(int index, int depthLimit, int alpha) {
+        play(aiSeed, index);
+        int score = alphaBeta(0, depthLimit - 1, false, alpha, Integer.MAX_VALUE, index, true);
+        undo(aiSeed, index);
+        return score;
+    }
+
+    /**
+     * Fail-soft alpha-beta; scores are from the AI's point of view, quicker wins score higher.
+     * Only the lines through lastIndex, the cell just played, are checked for a win.
+     * After remaining plies the position is scored by heuristicScore().
+     * The table stores win/loss scores relative to the node (see toTable), because the
+     * same position is reached at different depths and in later searches.
+     */
+    private int alphaBeta(int depth, int remaining, boolean isMaximizing, int alpha, int beta,
+                          int lastIndex, boolean budgeted) {
+        nodesVisited++;
+        if (budgeted && outOfBudget()) {
+            aborted = true;
+        }
+        if (aborted) {
+            return 0;  // the result is thrown away
+        }
+        Seed mover = isMaximizing ? aiSeed : opponentSeed;
+        Seed other = isMaximizing ? opponentSeed : aiSeed;
+        if (board.isWinningMove(other, lastIndex)) {
+            return (other == aiSeed) ? WIN_SCORE - depth : depth - WIN_SCORE;
+        }
+        if (board.isFull()) {
+            return 0;
+        }
+        if (remaining == 0) {
+            horizonReached = true;
+            return heuristicScore();
+        }
+        int draft = Math.min(remaining, board.emptyCount());
+
+        long key = hash.canonical(mover);
+        int slot = table.probe(key);
+        // Only an entry of exactly this draft is used, so the result is always the plain
+        // depth-limited minimax value, whatever earlier searches left in the table
+        if (slot >= 0 && table.draftAt(slot) == Math.min(draft, 0xFF)) {
+            if (draft < board.emptyCount()) {
+                horizonReached = true;  // the stored score came from a cut-off subtree
+            }
+            int stored = fromTable(table.scoreAt(slot), depth);
+            switch (table.flagAt(slot)) {
+                case TranspositionTable.EXACT -> {
+                    return stored;
+                }
+                case TranspositionTable.LOWER_BOUND -> alpha = Math.max(alpha, stored);
+                default -> beta = Math.min(beta, stored);
+            }
+            if (alpha >= beta) {
+                return stored;
+            }
         }
+        int alphaOrig = alpha, betaOrig = beta;
 
         int bestScore = isMaximizing ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+        int[] moves = moveBuffer[depth + 1];
+        int count = orderMoves(mover, other, moves);
+        for (int i = 0; i < count; i++) {
+            int index = moves[i];
+            play(mover, index);
+            int score = alphaBeta(depth + 1, remaining - 1, !isMaximizing, alpha, beta, index, budgeted);
+            undo(mover, index);
+            if (aborted) {
+                return 0;
+            }
 
-        for (int row = 0; row < Board.ROWS; row++) {
-            for (int col = 0; col < Board.COLS; col++) {
-                if (board.cells[row][col].content == Seed.NO_SEED) {
-                    board.cells[row][col].content = isMaximizing ? aiSeed : opponentSeed;
-                    int score = minimax(depth + 1, !isMaximizing);
-                    board.cells[row][col].content = Seed.NO_SEED;
-
-                    if (isMaximizing) {
-                        bestScore = Math.max(score, bestScore);
-                    } else {
-                        bestScore = Math.min(score, bestScore);
-                    }
-                }
+            if (isMaximizing) {
+                bestScore = Math.max(score, bestScore);
+                alpha = Math.max(alpha, score);
+            } else {
+                bestScore = Math.min(score, bestScore);
+                beta = Math.min(beta, score);
+            }
+            if (alpha >= beta) {
+                break; // cut-off, the other side will avoid this line
             }
         }
+
+        int flag = (bestScore <= alphaOrig) ? TranspositionTable.UPPER_BOUND
+                : (bestScore >= betaOrig) ? TranspositionTable.LOWER_BOUND
+                : TranspositionTable.EXACT;
+        table.store(key, toTable(bestScore, depth), flag, draft);
         return bestScore;
     }
 
-    private State evaluateBoard() {
-        // Reuse logic from Board.stepGame() without changing state
-        for (int row = 0; row < Board.ROWS; row++) {
-            if (board.cells[row][0].content != Seed.NO_SEED &&
-                    board.cells[row][0].content == board.cells[row][1].content &&
-                    board.cells[row][1].content == board.cells[row][2].content) {
-                return board.cells[row][0].content == Seed.CROSS ? State.CROSS_WON : State.NOUGHT_WON;
+    /**
+     * Has the search used up its node budget, or (checked every CLOCK_CHECK_INTERVAL nodes)
+     * its time, or been cancelled?
+     */
+    private boolean outOfBudget() {
+        if (nodeBudget > 0 && nodesVisited > nodeBudget) return true;
+        return nodesVisited % CLOCK_CHECK_INTERVAL == 0
+                && (owner.cancelSignal.getAsBoolean() || System.nanoTime() >= deadline);
+    }
+
+    /**
+     * Static estimate of the position from the AI's point of view: every line of winLength
+     * cells that only one side has seeds in counts for that side, 4 times more per extra seed.
+     */
+    private int heuristicScore() {
+        long[] mine = board.bitsOf(aiSeed);
+        long[] theirs = board.bitsOf(opponentSeed);
+        int score = 0;
+        for (int[] window : windows) {
+            int own = 0, opponent = 0;
+            for (int index : window) {
+                long bit = 1L << index;
+                if ((mine[index >>> 6] & bit) != 0) {
+                    own++;
+                } else if ((theirs[index >>> 6] & bit) != 0) {
+                    opponent++;
+                }
+            }
+            if (opponent == 0) {
+                score += windowWeights[own];
+            } else if (own == 0) {
+                score -= windowWeights[opponent];
             }
         }
+        return Math.max(-HEURISTIC_LIMIT, Math.min(HEURISTIC_LIMIT, score));
+    }
 
-        for (int col = 0; col < Board.COLS; col++) {
-            if (board.cells[0][col].content != Seed.NO_SEED &&
-                    board.cells[0][col].content == board.cells[1][col].content &&
-                    board.cells[1][col].content == board.cells[2][col].content) {
-                return board.cells[0][col].content == Seed.CROSS ? State.CROSS_WON : State.NOUGHT_WON;
+    /** Place a seed during the search, keeping the hashes and the near counts up to date */
+    private void play(Seed player, int index) {
+        board.place(player, index);
+        hash.toggle(player, index);
+        updateNear(index, 1);
+    }
+
+    /** Undo play() */
+    private void undo(Seed player, int index) {
+        updateNear(index, -1);
+        hash.toggle(player, index);
+        board.clear(index);
+    }
+
+    private void updateNear(int index, int delta) {
+        if (!nearMovesOnly) return;
+        int rows = board.getRows(), cols = board.getCols();
+        int row = index / cols, col = index % cols;
+        for (int r = Math.max(0, row - NEAR_RADIUS); r <= Math.min(rows - 1, row + NEAR_RADIUS); r++) {
+            for (int c = Math.max(0, col - NEAR_RADIUS); c <= Math.min(cols - 1, col + NEAR_RADIUS); c++) {
+                nearCount[r * cols + c] += delta;
             }
         }
+    }
 
-        if (board.cells[0][0].content != Seed.NO_SEED &&
-                board.cells[0][0].content == board.cells[1][1].content &&
-                board.cells[1][1].content == board.cells[2][2].content) {
-            return board.cells[0][0].content == Seed.CROSS ? State.CROSS_WON : State.NOUGHT_WON;
+    /** Move the given cell (if present) to the front of moves, keeping the others in order */
+    private static void moveToFront(int[] moves, int count, int index) {
+        for (int i = 0; i < count; i++) {
+            if (moves[i] == index) {
+                System.arraycopy(moves, 0, moves, 1, i);
+                moves[0] = index;
+                return;
+            }
         }
+    }
 
-        if (board.cells[0][2].content != Seed.NO_SEED &&
-                board.cells[0][2].content == board.cells[1][1].content &&
-                board.cells[1][1].content == board.cells[2][0].content) {
-            return board.cells[0][2].content == Seed.CROSS ? State.CROSS_WON : State.NOUGHT_WON;
+    /**
+     * Fill moves with the empty cells in search order: the mover's winning cells,
+     * then cells blocking the other side's win, then the rest in cellOrder
+     * (on 3x3: center, corners, edges). On large boards only cells near a played
+     * seed are tried, or the center if the board is empty. Returns the number of moves.
+     */
+    private int orderMoves(Seed mover, Seed other, int[] moves) {
+        if (nearMovesOnly && board.emptyCount() == board.getCellCount()) {
+            moves[0] = cellOrder[0];
+            return 1;
         }
-
-        for (int row = 0; row < Board.ROWS; row++) {
-            for (int col = 0; col < Board.COLS; col++) {
-                if (board.cells[row][col].content == Seed.NO_SEED) {
-                    return State.PLAYING;
-                }
+        int wins = 0, blocks = 0, rest = 0;
+        for (int index : cellOrder) {
+            if (!board.isEmpty(index) || (nearMovesOnly && nearCount[index] == 0)) continue;
+            if (board.isWinningMove(mover, index)) {
+                moves[wins++] = index;
+            } else if (board.isWinningMove(other, index)) {
+                blockScratch[blocks++] = index;
+            } else {
+                restScratch[rest++] = index;
             }
         }
+        System.arraycopy(blockScratch, 0, moves, wins, blocks);
+        System.arraycopy(restScratch, 0, moves, wins + blocks, rest);
+        return wins + blocks + rest;
+    }
+
+    /** Win/loss score counted from the node at the given depth instead of from the root */
+    private static int toTable(int score, int depth) {
+        return (score >= WIN_THRESHOLD) ? score + depth : (score <= -WIN_THRESHOLD) ? score - depth : score;
+    }
+
+    /** Inverse of toTable */
+    private static int fromTable(int score, int depth) {
+        return (score >= WIN_THRESHOLD) ? score - depth : (score <= -WIN_THRESHOLD) ? score + depth : score;
+    }
 
-        return State.DRAW;
+    private State evaluateBoard() {
+        // Full-board scan of the lines, without changing state
+        return board.evaluate();
     }
-}
\ No newline at end of file
+}
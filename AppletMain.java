@@ -2,6 +2,7 @@ import javax.swing.SwingUtilities;
 
 public class AppletMain {
     public static void main(String[] args) {
+        Assets.preload();
         SwingUtilities.invokeLater(() -> {
             MainFrame frame = new MainFrame();
             frame.setVisible(true);
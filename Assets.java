@@ -0,0 +1,125 @@
+import java.awt.Image;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import javax.imageio.ImageIO;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Clip;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import javax.swing.SwingUtilities;
+
+/**
+ * Cache of the game's images and sound clips. Each resource is decoded once, on a
+ * background loader thread, and the same instance is handed to everyone who asks. A
+ * sound comes as VOICES_PER_SOUND clips opened on the same samples, so it can overlap
+ * itself. preload() starts decoding all of them in parallel while the welcome screen shows.
+ * A missing or undecodable resource is reported once and comes back as null.
+ */
+public final class Assets {
+    public static final String BACKGROUND_IMAGE = "images/jellyfish.jpeg";
+    public static final String CROSS_IMAGE = "images/IMAGE O.png";   // Spongebob plays CROSS
+    public static final String NOUGHT_IMAGE = "images/IMAGE X.png";
+
+    private static final String[] IMAGES = {BACKGROUND_IMAGE, CROSS_IMAGE, NOUGHT_IMAGE};
+    /** Clips opened per sound effect, so that many copies of it can play at once */
+    public static final int VOICES_PER_SOUND = 4;
+
+    private static final ExecutorService LOADER = Executors.newFixedThreadPool(
+            Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors())), r -> {
+                Thread thread = new Thread(r, "asset-loader");
+                thread.setDaemon(true);
+                return thread;
+            });
+    private static final Map<String, CompletableFuture<Image>> images = new ConcurrentHashMap<>();
+    private static final Map<String, CompletableFuture<Clip[]>> voices = new ConcurrentHashMap<>();
+
+    private Assets() {}
+
+    /** Start decoding every image and sound in the background; returns at once */
+    public static void preload() {
+        long start = System.nanoTime();
+        CompletableFuture<?>[] all = new CompletableFuture<?>[IMAGES.length + SoundEffect.values().length];
+        int i = 0;
+        for (String name : IMAGES) {
+            all[i++] = imageAsync(name);
+        }
+        for (SoundEffect effect : SoundEffect.values()) {
+            all[i++] = voicesAsync(effect.getFileName());
+        }
+        CompletableFuture.allOf(all).thenRun(() -> System.out.printf(
+                "Assets preloaded in %.1f ms%n", (System.nanoTime() - start) / 1e6));
+    }
+
+    /**
+     * The decoded image, or null while it is still loading (or failed to load); never
+     * waits, so it may be called on the EDT. Use whenLoaded() to hear when it arrives.
+     */
+    public static Image imageIfLoaded(String name) {
+        return imageAsync(name).getNow(null);
+    }
+
+    /** Give the image to onEdt on the event dispatch thread once it is decoded */
+    public static void whenLoaded(String name, Consumer<Image> onEdt) {
+        imageAsync(name).thenAccept(image -> SwingUtilities.invokeLater(() -> onEdt.accept(image)));
+    }
+
+    /** The VOICES_PER_SOUND opened clips of a sound, waiting for them if they are still loading */
+    public static Clip[] voices(String name) {
+        return voicesAsync(name).join();
+    }
+
+    private static CompletableFuture<Image> imageAsync(String name) {
+        return images.computeIfAbsent(name, n -> load(n, Assets::decodeImage));
+    }
+
+    private static CompletableFuture<Clip[]> voicesAsync(String name) {
+        return voices.computeIfAbsent(name, n -> load(n, Assets::openVoices));
+    }
+
+    private static <T> CompletableFuture<T> load(String name, Function<URL, T> decoder) {
+        return CompletableFuture.supplyAsync(() -> {
+            URL url = Assets.class.getClassLoader().getResource(name);
+            if (url == null) {
+                System.err.println("Couldn't find file " + name);
+                return null;
+            }
+            return decoder.apply(url);
+        }, LOADER);
+    }
+
+    private static Image decodeImage(URL url) {
+        try {
+            return ImageIO.read(url);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static Clip[] openVoices(URL url) {
+        try (AudioInputStream audioInputStream = AudioSystem.getAudioInputStream(url)) {
+            AudioFormat format = audioInputStream.getFormat();
+            byte[] samples = audioInputStream.readAllBytes();  // decoded once for every voice
+            Clip[] clips = new Clip[VOICES_PER_SOUND];
+            for (int i = 0; i < clips.length; i++) {
+                clips[i] = AudioSystem.getClip();
+                clips[i].open(format, samples, 0, samples.length);
+            }
+            return clips;
+        } catch (UnsupportedAudioFileException | IOException | LineUnavailableException
+                 | IllegalArgumentException e) {
+            // IllegalArgumentException: no audio device, e.g. on a headless machine
+            e.printStackTrace();
+            return null;
+        }
+    }
+}
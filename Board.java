@@ -1,105 +1,267 @@
-import java.awt.*;
-
+/**
+ * The game board of an m,n,k-game: ROWS-by-COLS cells, the first player with
+ * WIN_LENGTH seeds in a row (horizontally, vertically or diagonally) wins.
+ * The default is the classic 3,3,3 Tic-Tac-Toe.
+ * Pure game logic, with no AWT: BoardView paints it.
+ */
 public class Board {
     // Define named constants
-    public static final int ROWS = 3;  // ROWS x COLS cells
-    public static final int COLS = 3;
-    // Define named constants for drawing
-    public static final int CANVAS_WIDTH = Cell.SIZE * COLS;  // the drawing canvas
-    public static final int CANVAS_HEIGHT = Cell.SIZE * ROWS;
-    public static final int GRID_WIDTH = 3;  // Grid-line's width
-    public static final int GRID_WIDTH_HALF = GRID_WIDTH / 2; // Grid-line's half-width
-    public static final Color COLOR_GRID = Color.CYAN;  // grid lines
-    public static final int Y_OFFSET = 1;  // Fine tune for better display
+    public static final int DEFAULT_ROWS = 3;  // ROWS x COLS cells
+    public static final int DEFAULT_COLS = 3;
+    public static final int DEFAULT_WIN_LENGTH = 3;  // seeds in a row needed to win
+
+    /** Line directions as (row step, col step): horizontal, vertical, diagonal, anti-diagonal */
+    static final int[][] DIRECTIONS = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
 
     // Define properties (package-visible)
-    /** Composes of 2D array of ROWS-by-COLS Cell instances */
-    Cell[][] cells;
+    /** Board size and the number in a row needed to win */
+    final int rows, cols, winLength;
+    /** Occupancy bitboards, one bit per cell, for each side; cell (row, col) is bit row * cols + col */
+    long[] crossBits, noughtBits;
+    /** Number of occupied cells, so a full board is detected without scanning */
+    int moveCount;
+
+    /** Number of winning lines through each cell, used to order moves (center first) */
+    private final int[] linesThrough;
+    /** Bits of the last word that map to real cells */
+    private final long lastWordMask;
 
-    /** Constructor to initialize the game board */
+    /** Constructor to initialize the classic 3x3 game board */
     public Board() {
+        this(DEFAULT_ROWS, DEFAULT_COLS, DEFAULT_WIN_LENGTH);
+    }
+
+    /** Constructor to initialize a rows-by-cols game board with winLength in a row to win */
+    public Board(int rows, int cols, int winLength) {
+        if (rows < 1 || cols < 1 || winLength < 1 || winLength > Math.max(rows, cols)) {
+            throw new IllegalArgumentException("Invalid board " + rows + "x" + cols + ", " + winLength + " in a row");
+        }
+        this.rows = rows;
+        this.cols = cols;
+        this.winLength = winLength;
+        int cellCount = rows * cols;
+        lastWordMask = (cellCount % 64 == 0) ? -1L : (1L << (cellCount % 64)) - 1;
+
+        linesThrough = new int[cellCount];
+        for (int row = 0; row < rows; ++row) {
+            for (int col = 0; col < cols; ++col) {
+                for (int[] d : DIRECTIONS) {
+                    // Count the winLength windows along this direction that contain the cell
+                    for (int start = -(winLength - 1); start <= 0; ++start) {
+                        int r0 = row + start * d[0], c0 = col + start * d[1];
+                        int r1 = r0 + (winLength - 1) * d[0], c1 = c0 + (winLength - 1) * d[1];
+                        if (inside(r0, c0) && inside(r1, c1)) {
+                            linesThrough[indexOf(row, col)]++;
+                        }
+                    }
+                }
+            }
+        }
         initGame();
     }
 
+    /** An empty board of the same size as shape, sharing its linesThrough table */
+    private Board(Board shape) {
+        rows = shape.rows;
+        cols = shape.cols;
+        winLength = shape.winLength;
+        lastWordMask = shape.lastWordMask;
+        linesThrough = shape.linesThrough;  // never written after construction
+        initGame();
+    }
+
+    /**
+     * A new empty board of this size. Cheaper than the constructor, which counts the lines
+     * through every cell in O(cells * winLength) steps; the count is shared instead.
+     */
+    public Board newEmptyBoard() {
+        return new Board(this);
+    }
+
     /** Initialize the game objects (run once) */
     public void initGame() {
-        cells = new Cell[ROWS][COLS]; // allocate the array
-        for (int row = 0; row < ROWS; ++row) {
-            for (int col = 0; col < COLS; ++col) {
-                // Allocate element of the array
-                cells[row][col] = new Cell(row, col);
-                // Cells are initialized in the constructor
-            }
-        }
+        int words = (rows * cols + 63) >>> 6;
+        crossBits = new long[words];
+        noughtBits = new long[words];
+        moveCount = 0;
     }
 
     /** Reset the game board, ready for new game */
     public void newGame() {
-        for (int row = 0; row < ROWS; ++row) {
-            for (int col = 0; col < COLS; ++col) {
-                cells[row][col].newGame(); // clear the cell content
-            }
+        java.util.Arrays.fill(crossBits, 0L);
+        java.util.Arrays.fill(noughtBits, 0L);
+        moveCount = 0;
+    }
+
+    /** Copy the position of another board of the same size */
+    public void copyFrom(Board other) {
+        if (other.rows != rows || other.cols != cols || other.winLength != winLength) {
+            throw new IllegalArgumentException("Board size differs");
         }
+        System.arraycopy(other.crossBits, 0, crossBits, 0, crossBits.length);
+        System.arraycopy(other.noughtBits, 0, noughtBits, 0, noughtBits.length);
+        moveCount = other.moveCount;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getWinLength() {
+        return winLength;
+    }
+
+    public int getCellCount() {
+        return rows * cols;
+    }
+
+    /** Is this the classic 3x3, 3-in-a-row board? */
+    public boolean isClassic() {
+        return rows == 3 && cols == 3 && winLength == 3;
+    }
+
+    /** Bit index of the cell (row, col) */
+    public int indexOf(int row, int col) {
+        return row * cols + col;
+    }
+
+    private boolean inside(int row, int col) {
+        return row >= 0 && row < rows && col >= 0 && col < cols;
+    }
+
+    /** Content of the cell (row, col) */
+    public Seed getContent(int row, int col) {
+        int index = indexOf(row, col);
+        if ((crossBits[index >>> 6] & (1L << index)) != 0) return Seed.CROSS;
+        if ((noughtBits[index >>> 6] & (1L << index)) != 0) return Seed.NOUGHT;
+        return Seed.NO_SEED;
+    }
+
+    /** Is the cell (row, col) still empty? */
+    public boolean isEmpty(int row, int col) {
+        return isEmpty(indexOf(row, col));
+    }
+
+    /** Is the cell with the given bit index still empty? */
+    public boolean isEmpty(int index) {
+        return ((crossBits[index >>> 6] | noughtBits[index >>> 6]) & (1L << index)) == 0;
+    }
+
+    /** Number of 64-cell words in each bitboard */
+    public int wordCount() {
+        return crossBits.length;
+    }
+
+    /** Empty cells of the given word; iterate with numberOfTrailingZeros and bits &= bits - 1 */
+    public long emptyBits(int word) {
+        long mask = (word == crossBits.length - 1) ? lastWordMask : -1L;
+        return ~(crossBits[word] | noughtBits[word]) & mask;
+    }
+
+    /** Number of empty cells */
+    public int emptyCount() {
+        return rows * cols - moveCount;
+    }
+
+    /** Is every cell occupied? */
+    public boolean isFull() {
+        return moveCount == rows * cols;
+    }
+
+    /** Bitboard of the given player */
+    public long[] bitsOf(Seed player) {
+        return (player == Seed.CROSS) ? crossBits : noughtBits;
+    }
+
+    /** Number of winning lines through the cell with the given bit index */
+    public int linesThrough(int index) {
+        return linesThrough[index];
+    }
+
+    /** Put the player's seed on the empty cell with the given bit index, without computing the state */
+    public void place(Seed player, int index) {
+        bitsOf(player)[index >>> 6] |= 1L << index;
+        moveCount++;
+    }
+
+    /** Empty the occupied cell with the given bit index again (undo of place) */
+    public void clear(int index) {
+        long mask = ~(1L << index);
+        crossBits[index >>> 6] &= mask;
+        noughtBits[index >>> 6] &= mask;
+        moveCount--;
+    }
+
+    private boolean owns(long[] bits, int row, int col) {
+        int index = row * cols + col;
+        return (bits[index >>> 6] & (1L << index)) != 0;
     }
 
     /**
-     *  The given player makes a move on (selectedRow, selectedCol).
-     *  Update cells[selectedRow][selectedCol]. Compute and return the
-     *  new game state (PLAYING, DRAW, CROSS_WON, NOUGHT_WON).
+     * Would the player have winLength in a row through the cell with the given
+     * bit index, if it held the player's seed? Only the lines through that cell are
+     * scanned, so this costs O(winLength) whatever the board size.
      */
-    public State stepGame(Seed player, int selectedRow, int selectedCol) {
-        // Update game board
-        cells[selectedRow][selectedCol].content = player;
+    public boolean isWinningMove(Seed player, int index) {
+        long[] bits = bitsOf(player);
+        int row = index / cols, col = index % cols;
+        for (int[] d : DIRECTIONS) {
+            int count = 1;
+            for (int r = row + d[0], c = col + d[1]; count < winLength && inside(r, c) && owns(bits, r, c);
+                 r += d[0], c += d[1]) {
+                count++;
+            }
+            for (int r = row - d[0], c = col - d[1]; count < winLength && inside(r, c) && owns(bits, r, c);
+                 r -= d[0], c -= d[1]) {
+                count++;
+            }
+            if (count >= winLength) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-        // Compute and return the new game state
-        if (cells[selectedRow][0].content == player  // 3-in-the-row
-                && cells[selectedRow][1].content == player
-                && cells[selectedRow][2].content == player
-                || cells[0][selectedCol].content == player // 3-in-the-column
-                && cells[1][selectedCol].content == player
-                && cells[2][selectedCol].content == player
-                || selectedRow == selectedCol     // 3-in-the-diagonal
-                && cells[0][0].content == player
-                && cells[1][1].content == player
-                && cells[2][2].content == player
-                || selectedRow + selectedCol == 2 // 3-in-the-opposite-diagonal
-                && cells[0][2].content == player
-                && cells[1][1].content == player
-                && cells[2][0].content == player) {
-            return (player == Seed.CROSS) ? State.CROSS_WON : State.NOUGHT_WON;
-        } else {
-            // Nobody win. Check for DRAW (all cells occupied) or PLAYING.
-            for (int row = 0; row < ROWS; ++row) {
-                for (int col = 0; col < COLS; ++col) {
-                    if (cells[row][col].content == Seed.NO_SEED) {
-                        return State.PLAYING; // still have empty cells
-                    }
+    /** Does the player have winLength in a row anywhere on the board? */
+    public boolean hasWon(Seed player) {
+        long[] bits = bitsOf(player);
+        for (int word = 0; word < bits.length; ++word) {
+            for (long b = bits[word]; b != 0; b &= b - 1) {
+                if (isWinningMove(player, (word << 6) + Long.numberOfTrailingZeros(b))) {
+                    return true;
                 }
             }
-            return State.DRAW; // no empty cell, it's a draw
         }
+        return false;
     }
 
-    /** Paint itself on the graphics canvas, given the Graphics context */
-    public void paint(Graphics g) {
-        // Draw the grid-lines
-        g.setColor(COLOR_GRID);
-        for (int row = 1; row < ROWS; ++row) {
-            g.fillRoundRect(0, Cell.SIZE * row - GRID_WIDTH_HALF,
-                    CANVAS_WIDTH - 1, GRID_WIDTH,
-                    GRID_WIDTH, GRID_WIDTH);
-        }
-        for (int col = 1; col < COLS; ++col) {
-            g.fillRoundRect(Cell.SIZE * col - GRID_WIDTH_HALF, 0 + Y_OFFSET,
-                    GRID_WIDTH, CANVAS_HEIGHT - 1,
-                    GRID_WIDTH, GRID_WIDTH);
-        }
+    /** Compute the game state of the current position by scanning the whole board, without changing it */
+    public State evaluate() {
+        if (hasWon(Seed.CROSS)) return State.CROSS_WON;
+        if (hasWon(Seed.NOUGHT)) return State.NOUGHT_WON;
+        return isFull() ? State.DRAW : State.PLAYING;
+    }
 
-        // Draw all the cells
-        for (int row = 0; row < ROWS; ++row) {
-            for (int col = 0; col < COLS; ++col) {
-                cells[row][col].paint(g);  // ask the cell to paint itself
-            }
+    /**
+     *  The given player makes a move on (selectedRow, selectedCol).
+     *  Update the player's bitboard. Compute and return the
+     *  new game state (PLAYING, DRAW, CROSS_WON, NOUGHT_WON),
+     *  checking only the lines through the new seed.
+     */
+    public State stepGame(Seed player, int selectedRow, int selectedCol) {
+        // Update game board
+        int index = indexOf(selectedRow, selectedCol);
+        place(player, index);
+
+        // Compute and return the new game state
+        if (isWinningMove(player, index)) {
+            return (player == Seed.CROSS) ? State.CROSS_WON : State.NOUGHT_WON;
         }
+        // Nobody win. Check for DRAW (all cells occupied) or PLAYING.
+        return isFull() ? State.DRAW : State.PLAYING;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,91 @@
+import java.awt.*;
+
+/**
+ * Paints a Board: the grid lines and a Cell per square, shrunk to fit larger boards.
+ * The board itself knows nothing about drawing.
+ */
+public class BoardView {
+    // Define named constants for drawing
+    public static final int MAX_CANVAS_SIZE = Cell.SIZE * 3;  // cells shrink to fit larger boards
+    public static final int GRID_WIDTH = 3;  // Grid-line's width
+    public static final int GRID_WIDTH_HALF = GRID_WIDTH / 2; // Grid-line's half-width
+    public static final Color COLOR_GRID = Color.CYAN;  // grid lines
+    public static final int Y_OFFSET = 1;  // Fine tune for better display
+
+    private final Board board;
+    private final int rows, cols;
+    /** Composes of 2D array of ROWS-by-COLS Cell instances */
+    private final Cell[][] cells;
+
+    public BoardView(Board board) {
+        this.board = board;
+        rows = board.getRows();
+        cols = board.getCols();
+        cells = new Cell[rows][cols]; // allocate the array
+        for (int row = 0; row < rows; ++row) {
+            for (int col = 0; col < cols; ++col) {
+                cells[row][col] = new Cell(row, col);
+            }
+        }
+    }
+
+    /** Width and height of a cell on screen */
+    public int getCellSize() {
+        return Math.min(Cell.SIZE, MAX_CANVAS_SIZE / Math.max(rows, cols));
+    }
+
+    /** The drawing canvas */
+    public int getCanvasWidth() {
+        return getCellSize() * cols;
+    }
+
+    public int getCanvasHeight() {
+        return getCellSize() * rows;
+    }
+
+    /** Paint the board on the graphics canvas, given the Graphics context */
+    public void paint(Graphics g) {
+        paintGrid(g);
+        // Draw all the cells
+        int cellSize = getCellSize();
+        for (int row = 0; row < rows; ++row) {
+            for (int col = 0; col < cols; ++col) {
+                if (!g.hitClip(col * cellSize, row * cellSize, cellSize, cellSize)) {
+                    continue;  // outside the dirty region being repainted
+                }
+                cells[row][col].content = board.getContent(row, col); // sync from the bitboards
+                cells[row][col].paint(g, cellSize);  // ask the cell to paint itself
+            }
+        }
+    }
+
+    /** Paint the grid lines only; they do not change during a game */
+    public void paintGrid(Graphics g) {
+        int cellSize = getCellSize();
+        g.setColor(COLOR_GRID);
+        for (int row = 1; row < rows; ++row) {
+            g.fillRoundRect(0, cellSize * row - GRID_WIDTH_HALF,
+                    getCanvasWidth() - 1, GRID_WIDTH,
+                    GRID_WIDTH, GRID_WIDTH);
+        }
+        for (int col = 1; col < cols; ++col) {
+            g.fillRoundRect(cellSize * col - GRID_WIDTH_HALF, 0 + Y_OFFSET,
+                    GRID_WIDTH, getCanvasHeight() - 1,
+                    GRID_WIDTH, GRID_WIDTH);
+        }
+    }
+
+    /** Paint the seeds only, with images already scaled to the seed size */
+    public void paintCells(Graphics g, Image crossSprite, Image noughtSprite) {
+        int cellSize = getCellSize();
+        for (int row = 0; row < rows; ++row) {
+            for (int col = 0; col < cols; ++col) {
+                if (!g.hitClip(col * cellSize, row * cellSize, cellSize, cellSize)) {
+                    continue;  // outside the dirty region being repainted
+                }
+                cells[row][col].content = board.getContent(row, col); // sync from the bitboards
+                cells[row][col].paint(g, cellSize, crossSprite, noughtSprite);
+            }
+        }
+    }
+}
@@ -1,10 +1,11 @@
 import java.awt.*;
 /**
- * The Cell class models each individual cell of the game board.
+ * The Cell class paints each individual cell of the game board.
+ * The position itself is kept in the bitboards of Board; content is synced before painting.
  */
 public class Cell {
     // Define named constants for drawing
-    public static final int SIZE = 120; // cell width/height (square)
+    public static final int SIZE = 120; // default cell width/height (square)
     // Symbols (cross/nought) are displayed inside a cell, with padding from border
     public static final int PADDING = SIZE / 5;
     public static final int SEED_SIZE = SIZE - PADDING * 2;
@@ -27,13 +28,44 @@ public class Cell {
         content = Seed.NO_SEED;
     }
 
-    /** Paint itself on the graphics canvas, given the Graphics context */
+    /** Paint itself on the graphics canvas at the default cell size */
     public void paint(Graphics g) {
+        paint(g, SIZE);
+    }
+
+    /** Width and height of a seed inside a cell of the given size */
+    public static int getSeedSize(int cellSize) {
+        return cellSize - (cellSize / 5) * 2;
+    }
+
+    /** Paint itself on the graphics canvas, given the Graphics context and the cell size */
+    public void paint(Graphics g, int size) {
+        paint(g, size, Assets.imageIfLoaded(Assets.CROSS_IMAGE), Assets.imageIfLoaded(Assets.NOUGHT_IMAGE));
+    }
+
+    /**
+     * Paint itself with the given seed images; images already scaled to the seed size
+     * (see RenderCache) are copied without resampling. A null image, one still loading,
+     * is drawn as a plain cross or circle instead.
+     */
+    public void paint(Graphics g, int size, Image crossImage, Image noughtImage) {
         // Draw the Seed if it is not empty
-        int x1 = col * SIZE + PADDING;
-        int y1 = row * SIZE + PADDING;
+        int padding = size / 5;
+        int x1 = col * size + padding;
+        int y1 = row * size + padding;
         if (content == Seed.CROSS || content == Seed.NOUGHT) {
-            g.drawImage(content.getImage(), x1, y1, SEED_SIZE, SEED_SIZE, null);
+            int seedSize = getSeedSize(size);
+            Image img = (content == Seed.CROSS) ? crossImage : noughtImage;
+            if (img != null) {
+                g.drawImage(img, x1, y1, seedSize, seedSize, null);
+            } else if (content == Seed.CROSS) {
+                g.setColor(Color.RED);
+                g.drawLine(x1, y1, x1 + seedSize, y1 + seedSize);
+                g.drawLine(x1 + seedSize, y1, x1, y1 + seedSize);
+            } else {
+                g.setColor(Color.BLUE);
+                g.drawOval(x1, y1, seedSize, seedSize);
+            }
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,147 @@
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A small JDBC connection pool: up to maxConnections connections to one database,
+ * opened on demand and kept open between uses, each with its prepared statements,
+ * so a query is neither a new connection nor a new statement after the first.
+ *
+ * borrow() hands out a Lease, used in try-with-resources; closing it returns the
+ * connection to the pool. A lease whose connection failed is discarded instead, and
+ * a connection idle for VALIDATE_AFTER_MILLIS is checked before it is handed out again.
+ *
+ * The URL names the driver, e.g. jdbc:h2:mem:results or jdbc:mysql://host:port/db;
+ * the driver must be on the classpath.
+ */
+public class ConnectionPool implements AutoCloseable {
+    private static final long VALIDATE_AFTER_MILLIS = 30_000;
+    private static final int VALIDATE_TIMEOUT_SECONDS = 2;
+
+    private final String url, user, password;
+    /** One permit per connection that may still be borrowed */
+    private final Semaphore permits;
+    /** Idle connections, the most recently used first */
+    private final LinkedBlockingDeque<Lease> idle = new LinkedBlockingDeque<>();
+    private volatile boolean closed;
+
+    /** A borrowed connection; close() gives it back */
+    public final class Lease implements AutoCloseable {
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements = new HashMap<>();
+        private long releasedMillis;
+        private boolean returned;
+        private boolean broken;
+
+        Lease(Connection connection) {
+            this.connection = connection;
+        }
+
+        /** The same connection and statements under a new lease, so a returned lease stays closed */
+        private Lease(Lease returned) {
+            this.connection = returned.connection;
+            this.statements.putAll(returned.statements);
+            this.releasedMillis = returned.releasedMillis;
+        }
+
+        public Connection connection() {
+            return connection;
+        }
+
+        /** The connection's prepared statement for sql, prepared at its first use */
+        public PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement statement = statements.get(sql);
+            if (statement == null) {
+                statement = connection.prepareStatement(sql);
+                statements.put(sql, statement);
+            }
+            return statement;
+        }
+
+        /** The connection failed: close it instead of returning it to the pool */
+        public void discard() {
+            broken = true;
+        }
+
+        @Override
+        public void close() {
+            if (returned) return;
+            returned = true;
+            if (!broken && !closed) {
+                try {
+                    if (!connection.getAutoCommit()) {
+                        connection.rollback();  // whatever the borrower left uncommitted
+                        connection.setAutoCommit(true);
+                    }
+                    releasedMillis = System.currentTimeMillis();
+                    idle.offerFirst(new Lease(this));
+                    permits.release();
+                    if (closed) ConnectionPool.this.close();  // closed meanwhile
+                    return;
+                } catch (SQLException e) {
+                    // fall through: the connection is unusable
+                }
+            }
+            closeQuietly(connection);
+            permits.release();
+        }
+    }
+
+    public ConnectionPool(String url, String user, String password, int maxConnections) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.permits = new Semaphore(maxConnections, true);
+    }
+
+    /** A connection, waiting up to timeoutMillis for one to be returned if all are in use */
+    public Lease borrow(long timeoutMillis) throws SQLException {
+        if (closed) throw new SQLException("Connection pool closed");
+        try {
+            if (!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("No connection free after " + timeoutMillis + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+        try {
+            Lease lease;
+            while ((lease = idle.pollFirst()) != null) {
+                if (System.currentTimeMillis() - lease.releasedMillis < VALIDATE_AFTER_MILLIS
+                        || lease.connection.isValid(VALIDATE_TIMEOUT_SECONDS)) {
+                    return lease;
+                }
+                closeQuietly(lease.connection);
+            }
+            return new Lease(DriverManager.getConnection(url, user, password));
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /** Close the idle connections; leases still out close theirs when they are returned */
+    @Override
+    public void close() {
+        closed = true;
+        Lease lease;
+        while ((lease = idle.pollFirst()) != null) {
+            closeQuietly(lease.connection);
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            // already broken; nothing left to release
+        }
+    }
+}
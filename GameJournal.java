@@ -0,0 +1,493 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Append-only journal of games: every new game, move, resignation and closed game is a
+ * fixed-size record in a memory-mapped segment file, so an append is a few stores to
+ * memory and the operating system writes the pages out. The mapped pages are also
+ * forced to disk every FLUSH_INTERVAL_MILLIS, when a segment fills up, and at close().
+ *
+ * Segments are journal-<number>.log files of SEGMENT_BYTES in one directory. A record
+ * is RECORD_BYTES: the game id, the packed fields and a check word over both and the
+ * record's position, so a record torn by a crash, or the zeros after the last one, end
+ * a segment. Opening a journal finds that end in the last segment and appends from there.
+ * Only one journal at a time may append to a directory: it holds a lock on its
+ * journal.lock file, and a second one fails to open.
+ *
+ * replay() reads the records of some segments in order and hands them to a Handler,
+ * checking them on the way: a record with fields out of range, or a move off the board,
+ * onto an occupied cell or in a game already over, is reported on System.err and left
+ * out. Run java GameJournal <directory> to print the games. A game begun in an earlier
+ * segment than those replayed is skipped.
+ *
+ * compact() starts the journal over from a snapshot of the live games, written as
+ * NEW_GAME records each followed by PLACE records for its cells, and deletes the older
+ * segments, so a journal is only as long as its live games and what happened since.
+ */
+public class GameJournal implements AutoCloseable {
+    public static final int RECORD_BYTES = 24;
+    public static final long SEGMENT_BYTES = 64L << 20;
+    private static final long FLUSH_INTERVAL_MILLIS = 1000;
+
+    /** Record types; PLACE puts a seed on the board of a snapshot's game and sets its state */
+    public static final int NEW_GAME = 1, MOVE = 2, RESIGN = 3, CLOSE = 4, PLACE = 5;
+    /** Difficulty of a NEW_GAME record between two humans */
+    public static final int NO_AI = 0xFF;
+
+    private static final Seed[] SEEDS = Seed.values();
+    private static final State[] STATES = State.values();
+    private static final AIPlayer.Difficulty[] DIFFICULTIES = AIPlayer.Difficulty.values();
+
+    private final Path directory;
+    private final FileChannel lockFile;
+    private int segment;
+    /** Is compact() writing its snapshot, into segments under temporary names? */
+    private boolean snapshotting;
+    private FileChannel channel;
+    private volatile MappedByteBuffer buffer;
+    private int position;
+    private final Thread flusher;
+
+    /** Open the journal in the given directory (created if missing), appending after its last record */
+    public GameJournal(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        lockFile = FileChannel.open(directory.resolve("journal.lock"), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = lockFile.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;  // held by another journal of this JVM
+        }
+        if (lock == null) {
+            lockFile.close();
+            throw new IOException("Journal " + directory + " is in use by another journal");
+        }
+        List<Path> segments = segments(directory);
+        segment = segments.isEmpty() ? 0 : segmentNumber(segments.get(segments.size() - 1));
+        map(segment);
+        position = endOf(buffer);
+        flusher = new Thread(this::flushPeriodically, "journal-flush");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /** A game begins; difficulty and humanSeed are those of its AI opponent (difficulty null: two humans) */
+    public void newGame(long gameId, int rows, int cols, int winLength, AIPlayer.Difficulty difficulty,
+                        Seed humanSeed) {
+        int level = (difficulty == null) ? NO_AI : difficulty.ordinal();
+        append(gameId, pack(NEW_GAME, level, humanSeed.ordinal(), rows, cols, winLength));
+    }
+
+    /** A player moved, leaving the game in the given state */
+    public void move(long gameId, Seed player, int row, int col, State state) {
+        append(gameId, pack(MOVE, player.ordinal(), state.ordinal(), row, col, 0));
+    }
+
+    /** A player gave up, leaving the game in the given state */
+    public void resign(long gameId, State state) {
+        append(gameId, pack(RESIGN, 0, state.ordinal(), 0, 0, 0));
+    }
+
+    /** The game is forgotten; it is not restored after a restart */
+    public void close(long gameId) {
+        append(gameId, pack(CLOSE, 0, 0, 0, 0, 0));
+    }
+
+    /**
+     * A live game, in a snapshot written by compact(): it is journaled as if it had just
+     * begun and its seeds were placed, then left in the given state. Its records are kept
+     * in one segment.
+     */
+    public synchronized void snapshotGame(long gameId, Board board, AIPlayer.Difficulty difficulty, Seed humanSeed,
+                                          State state) {
+        if (position + (2L + board.moveCount) * RECORD_BYTES > SEGMENT_BYTES) {
+            roll();
+        }
+        newGame(gameId, board.getRows(), board.getCols(), board.getWinLength(), difficulty, humanSeed);
+        for (int row = 0; row < board.getRows(); row++) {
+            for (int col = 0; col < board.getCols(); col++) {
+                Seed seed = board.getContent(row, col);
+                if (seed != Seed.NO_SEED) {
+                    append(gameId, pack(PLACE, seed.ordinal(), state.ordinal(), row, col, 0));
+                }
+            }
+        }
+        if (board.moveCount == 0 && state != State.PLAYING) {
+            resign(gameId, state);
+        }
+    }
+
+    /**
+     * Start the journal over: snapshot writes the live games with snapshotGame() (and the
+     * closed ones whose ids must not come back with close()) into new segments, which
+     * then replace all the older ones. The new segments are written under temporary
+     * names and renamed once complete, and a game never spans two of them, so after a
+     * crash meanwhile replaying whatever is there still gives every game. Call it before
+     * any other append; returns the number of older segments deleted.
+     */
+    public synchronized int compact(Consumer<GameJournal> snapshot) throws IOException {
+        List<Path> older = segments(directory);
+        try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(directory, "journal-*.tmp")) {
+            for (Path leftover : leftovers) {
+                Files.delete(leftover);  // a snapshot a crash interrupted
+            }
+        }
+        buffer.force();
+        channel.close();
+        int first = segment + 1;
+        snapshotting = true;
+        segment = first;
+        map(segment);
+        position = 0;
+        snapshot.accept(this);
+        buffer.force();
+        channel.close();
+        snapshotting = false;
+        for (int number = first; number <= segment; number++) {
+            Files.move(segmentPath(directory, number, ".tmp"), segmentPath(directory, number),
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        for (Path path : older) {
+            Files.delete(path);
+        }
+        map(segment);
+        return older.size();
+    }
+
+    /** Fields of a record body: type, two small fields, row and col (or rows and cols), win length */
+    private static long pack(int type, int a, int b, int row, int col, int winLength) {
+        return type | (long) (a & 0xFF) << 8 | (long) (b & 0xFF) << 16 | (long) (row & 0xFFFF) << 24
+                | (long) (col & 0xFFFF) << 40 | (long) (winLength & 0xFF) << 56;
+    }
+
+    private synchronized void append(long gameId, long body) {
+        if (position + RECORD_BYTES > SEGMENT_BYTES) {
+            roll();
+        }
+        MappedByteBuffer out = buffer;
+        out.putLong(position, gameId);
+        out.putLong(position + 8, body);
+        out.putLong(position + 16, check(gameId, body, position));
+        position += RECORD_BYTES;
+    }
+
+    /** Force the full segment to disk and start the next one */
+    private void roll() {
+        try {
+            buffer.force();
+            channel.close();
+            map(++segment);
+            position = 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void map(int number) throws IOException {
+        Path path = snapshotting ? segmentPath(directory, number, ".tmp") : segmentPath(directory, number);
+        channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_BYTES);
+        mapped.order(ByteOrder.nativeOrder());
+        buffer = mapped;
+    }
+
+    private void flushPeriodically() {
+        while (true) {
+            try {
+                Thread.sleep(FLUSH_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            buffer.force();
+        }
+    }
+
+    /** Force everything to disk and stop appending */
+    @Override
+    public synchronized void close() throws IOException {
+        flusher.interrupt();
+        buffer.force();
+        channel.close();
+        lockFile.close();  // releases the lock
+    }
+
+    private static long check(long gameId, long body, int position) {
+        long z = gameId * 0x9E3779B97F4A7C15L ^ body ^ (long) position << 32 ^ 0x4A4F55524E414CL;  // "JOURNAL"
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return (z ^ (z >>> 31)) | 1;  // never 0, so an all-zero record is never valid
+    }
+
+    /** Position after the last valid record of a segment */
+    private static int endOf(MappedByteBuffer in) {
+        int at = 0;
+        while (at + RECORD_BYTES <= in.limit()
+                && in.getLong(at + 16) == check(in.getLong(at), in.getLong(at + 8), at)) {
+            at += RECORD_BYTES;
+        }
+        return at;
+    }
+
+    /** Receives the records replay() reads, once they are checked */
+    public interface Handler {
+        /** difficulty null: two humans */
+        void newGame(long gameId, int rows, int cols, int winLength, AIPlayer.Difficulty difficulty, Seed humanSeed);
+
+        void move(long gameId, Seed player, int row, int col, State state);
+
+        void place(long gameId, Seed player, int row, int col, State state);
+
+        void resign(long gameId, State state);
+
+        void close(long gameId);
+    }
+
+    /** A game rebuilt from the journal */
+    public static final class Game {
+        public final long id;
+        public final Board board;
+        /** The AI's level, or null between two humans, and the human's side */
+        public final AIPlayer.Difficulty difficulty;
+        public final Seed humanSeed;
+        public final List<Move> moves = new ArrayList<>();
+        public State state = State.PLAYING;
+        public boolean closed;
+
+        Game(long id, Board board, AIPlayer.Difficulty difficulty, Seed humanSeed) {
+            this.id = id;
+            this.board = board;
+            this.difficulty = difficulty;
+            this.humanSeed = humanSeed;
+        }
+    }
+
+    /**
+     * Rebuild the games of the given segments, read in order, by their ids in order of
+     * creation. A game whose id is reused starts over. Every game is kept in memory, closed
+     * ones too: for printing a journal, not for restoring one (use a Handler instead).
+     */
+    public static Map<Long, Game> replay(List<Path> segments) throws IOException {
+        Map<Long, Game> games = new LinkedHashMap<>();
+        replay(segments, new Handler() {
+            @Override
+            public void newGame(long gameId, int rows, int cols, int winLength, AIPlayer.Difficulty difficulty,
+                                Seed humanSeed) {
+                games.remove(gameId);
+                games.put(gameId, new Game(gameId, new Board(rows, cols, winLength), difficulty, humanSeed));
+            }
+
+            @Override
+            public void move(long gameId, Seed player, int row, int col, State state) {
+                Game game = games.get(gameId);
+                if (game == null) return;  // begun in an earlier segment
+                State replayed = replayMove(gameId, game.board, game.state, player, row, col, state);
+                if (replayed != null) {
+                    game.moves.add(new Move(row, col));
+                    game.state = replayed;
+                }
+            }
+
+            @Override
+            public void place(long gameId, Seed player, int row, int col, State state) {
+                Game game = games.get(gameId);
+                if (game != null && replayPlace(gameId, game.board, player, row, col)) {
+                    game.moves.add(new Move(row, col));
+                    game.state = state;
+                }
+            }
+
+            @Override
+            public void resign(long gameId, State state) {
+                Game game = games.get(gameId);
+                if (game != null) game.state = state;
+            }
+
+            @Override
+            public void close(long gameId) {
+                Game game = games.get(gameId);
+                if (game != null) game.closed = true;
+            }
+        });
+        return games;
+    }
+
+    /** Hand the records of the given segments, read in order, to handler */
+    public static void replay(List<Path> segments, Handler handler) throws IOException {
+        for (Path path : segments) {
+            try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+                MappedByteBuffer records = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+                records.order(ByteOrder.nativeOrder());
+                int end = endOf(records);
+                for (int at = 0; at < end; at += RECORD_BYTES) {
+                    apply(handler, records.getLong(at), records.getLong(at + 8));
+                }
+            }
+        }
+    }
+
+    private static void apply(Handler handler, long gameId, long body) {
+        int type = (int) body & 0xFF;
+        int a = (int) (body >>> 8) & 0xFF, b = (int) (body >>> 16) & 0xFF;
+        int row = (int) (body >>> 24) & 0xFFFF, col = (int) (body >>> 40) & 0xFFFF;
+        int winLength = (int) (body >>> 56) & 0xFF;
+        switch (type) {
+            case NEW_GAME:
+                if ((a < DIFFICULTIES.length || a == NO_AI) && b < 2 && row >= 1 && col >= 1 && winLength >= 1
+                        && winLength <= Math.max(row, col)) {
+                    handler.newGame(gameId, row, col, winLength, (a == NO_AI) ? null : DIFFICULTIES[a], SEEDS[b]);
+                    return;
+                }
+                break;
+            case MOVE:
+            case PLACE:
+                if (a < 2 && b < STATES.length) {
+                    if (type == MOVE) {
+                        handler.move(gameId, SEEDS[a], row, col, STATES[b]);
+                    } else {
+                        handler.place(gameId, SEEDS[a], row, col, STATES[b]);
+                    }
+                    return;
+                }
+                break;
+            case RESIGN:
+                if (b < STATES.length) {
+                    handler.resign(gameId, STATES[b]);
+                    return;
+                }
+                break;
+            case CLOSE:
+                handler.close(gameId);
+                return;
+            default:
+                break;
+        }
+        System.err.printf("Game %d: invalid record %016x skipped%n", gameId, body);
+    }
+
+    /**
+     * Play a journaled move on the board of a game in the given state, and return the
+     * new state; null if the move is off the board, onto an occupied cell or in a game
+     * already over, which is reported and not played. A new state that differs from the
+     * journal's is reported too.
+     */
+    public static State replayMove(long gameId, Board board, State state, Seed player, int row, int col,
+                                   State journaled) {
+        if (state != State.PLAYING || row >= board.getRows() || col >= board.getCols() || !board.isEmpty(row, col)) {
+            System.err.printf("Game %d: move %d,%d by %s in a %s game on %s skipped%n", gameId, row, col, player,
+                    state, rowsOf(board));
+            return null;
+        }
+        State replayed = board.stepGame(player, row, col);
+        if (replayed != journaled) {
+            System.err.printf("Game %d: move %d leads to %s, the journal says %s%n", gameId, board.moveCount,
+                    replayed, journaled);
+        }
+        return replayed;
+    }
+
+    /**
+     * Put a snapshot's seed on the board; false if the cell is off the board or holds the
+     * other seed, which is reported. A seed already there is left as it is.
+     */
+    public static boolean replayPlace(long gameId, Board board, Seed player, int row, int col) {
+        if (row >= board.getRows() || col >= board.getCols()
+                || (!board.isEmpty(row, col) && board.getContent(row, col) != player)) {
+            System.err.printf("Game %d: %s placed at %d,%d on %s skipped%n", gameId, player, row, col, rowsOf(board));
+            return false;
+        }
+        if (board.isEmpty(row, col)) {
+            board.place(player, board.indexOf(row, col));
+        }
+        return true;
+    }
+
+    /** The board's rows, top to bottom, separated by '/' */
+    private static String rowsOf(Board board) {
+        StringBuilder sb = new StringBuilder();
+        for (int row = 0; row < board.getRows(); row++) {
+            if (row > 0) sb.append('/');
+            for (int col = 0; col < board.getCols(); col++) {
+                Seed seed = board.getContent(row, col);
+                sb.append(seed == Seed.CROSS ? 'X' : seed == Seed.NOUGHT ? 'O' : '.');
+            }
+        }
+        return sb.toString();
+    }
+
+    /** The segments of the journal in the given directory, in order */
+    public static List<Path> segments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) return segments;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "journal-*.log")) {
+            for (Path file : files) {
+                segments.add(file);
+            }
+        }
+        Collections.sort(segments);  // the numbers are zero-padded
+        return segments;
+    }
+
+    private static Path segmentPath(Path directory, int number) {
+        return segmentPath(directory, number, ".log");
+    }
+
+    private static Path segmentPath(Path directory, int number, String suffix) {
+        return directory.resolve(String.format("journal-%06d%s", number, suffix));
+    }
+
+    private static int segmentNumber(Path segment) {
+        String name = segment.getFileName().toString();
+        return Integer.parseInt(name.substring("journal-".length(), name.length() - ".log".length()));
+    }
+
+    /**
+     * Print the games of a journal, of one of its segments, or one game.
+     * Run with: java GameJournal <directory> [-segment N] [-game ID]
+     */
+    public static void main(String[] args) throws IOException {
+        Path directory = Paths.get(args[0]);
+        List<Path> segments = segments(directory);
+        long only = -1;
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "-segment": segments = List.of(segmentPath(directory, Integer.parseInt(args[i + 1]))); break;
+                case "-game": only = Long.parseLong(args[i + 1]); break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(2);
+            }
+        }
+        long start = System.nanoTime();
+        Map<Long, Game> games = replay(segments);
+        long elapsed = System.nanoTime() - start;
+        for (Game game : games.values()) {
+            if (only >= 0 && game.id != only) continue;
+            System.out.printf("Game %d: %dx%d k%d, %s, human %s: %s%s %s%n", game.id, game.board.getRows(),
+                    game.board.getCols(), game.board.getWinLength(),
+                    (game.difficulty == null) ? "two humans" : game.difficulty, game.humanSeed,
+                    game.state, game.closed ? " (closed)" : "", game.moves);
+        }
+        System.out.printf("%,d games from %d segments replayed in %.1f ms%n", games.size(), segments.size(),
+                elapsed / 1e6);
+    }
+}
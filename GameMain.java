@@ -1,6 +1,11 @@
 import java.awt.*;
 import java.awt.event.*;
-import java.net.URL;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.swing.*;
 
 public class GameMain extends JPanel {
@@ -11,29 +16,129 @@ public class GameMain extends JPanel {
         HUMAN_VS_AI
     }
 
+    /** Minimum time before the AI's reply is shown, so it does not look instantaneous */
+    private static final int AI_MOVE_DELAY_MILLIS = 600;
+    /** AI searches run here, so the EDT keeps painting and handling input while the AI thinks */
+    private static final ExecutorService AI_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "ai-search");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /** Draw through the RenderCache; -Dtictactoe.renderCache=false scales every image every frame */
+    private static final boolean USE_RENDER_CACHE =
+            Boolean.parseBoolean(System.getProperty("tictactoe.renderCache", "true"));
+    /** Frames between two reports of the paint time */
+    private static final int PAINT_REPORT_FRAMES = 100;
+    /**
+     * Journal of the games played, in the "desktop" directory under -Dtictactoe.journal
+     * when that is set (so never in a GameServer's journal), else null
+     */
+    private static final GameJournal JOURNAL = openJournal(System.getProperty("tictactoe.journal"));
+    /**
+     * Where finished games go, when -Dtictactoe.results names a JDBC URL (user
+     * -Dtictactoe.resultsUser, password in TICTACTOE_DB_PASSWORD); else null
+     */
+    private static final ResultsRepository RESULTS = openResults(System.getProperty("tictactoe.results"));
+    /** The name the results are kept under */
+    private static final String PLAYER = System.getProperty("tictactoe.player", System.getProperty("user.name"));
+
     private Board board;
+    private BoardView boardView;
     private State currentState;
     private Seed currentPlayer;
     private JLabel statusBar;
     private Image backgroundImage;
+    private final RenderCache renderCache = new RenderCache();
+    /** Time spent in paintComponent, recorded on the EDT */
+    private final LatencyHistogram paintTime = new LatencyHistogram();
+    private boolean shown;
 
     private GameMode gameMode;
     private AIPlayer.Difficulty difficulty;
     private MainFrame mainFrame;
+    private int rows, cols, winLength;
+
+    /** The AI of the current game (HUMAN_VS_AI only), created at its first move */
+    private PonderingEngine engine;
+    /** Is the AI searching its reply? Its task, and the pondering task on the human's turn */
+    private boolean aiThinking;
+    private Future<?> pendingAIMove;
+    private Future<?> pendingPonder;
+    /** Cancel signals of those two tasks; each task gets a fresh one */
+    private AtomicBoolean aiMoveCancelled = new AtomicBoolean();
+    private AtomicBoolean ponderCancelled = new AtomicBoolean();
+    /** Incremented on every AI request and cancellation, so stale replies can be recognised */
+    private int aiRequest;
+    /** Id of the current game in the journal: the time it began, in milliseconds */
+    private long gameId;
+    /** The side of the human (the first human between two) in the current game */
+    private Seed humanSeed;
 
     public GameMain(MainFrame mainFrame, GameMode gameMode, AIPlayer.Difficulty difficulty, Seed firstPlayer) {
+        this(mainFrame, gameMode, difficulty, firstPlayer,
+                Board.DEFAULT_ROWS, Board.DEFAULT_COLS, Board.DEFAULT_WIN_LENGTH);
+    }
+
+    public GameMain(MainFrame mainFrame, GameMode gameMode, AIPlayer.Difficulty difficulty, Seed firstPlayer,
+                    int rows, int cols, int winLength) {
         this.mainFrame = mainFrame;
+        this.rows = rows;
+        this.cols = cols;
+        this.winLength = winLength;
         this.gameMode = gameMode;
         this.difficulty = difficulty;
         this.currentPlayer = firstPlayer;
 
-        URL bgURL = getClass().getClassLoader().getResource("images/jellyfish.jpeg");
-        if (bgURL != null) {
-            backgroundImage = new ImageIcon(bgURL).getImage();
-        }
+        Assets.whenLoaded(Assets.BACKGROUND_IMAGE, image -> {
+            backgroundImage = image;
+            renderCache.setBackground(image);
+            repaint();
+        });
+        // Seeds are drawn as placeholders until their images are decoded
+        Assets.whenLoaded(Assets.CROSS_IMAGE, image -> repaint());
+        Assets.whenLoaded(Assets.NOUGHT_IMAGE, image -> repaint());
 
         initGame();
         setupUI();
+        updateStatusBar();
+    }
+
+    private static GameJournal openJournal(String directory) {
+        if (directory == null) return null;
+        try {
+            GameJournal journal = new GameJournal(Paths.get(directory, "desktop"));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    journal.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }, "journal-close"));
+            return journal;
+        } catch (IOException e) {
+            System.err.println("Cannot open the game journal in " + directory + ": " + e);
+            return null;
+        }
+    }
+
+    private static ResultsRepository openResults(String url) {
+        if (url == null) return null;
+        ConnectionPool pool = new ConnectionPool(url, System.getProperty("tictactoe.resultsUser"),
+                System.getenv("TICTACTOE_DB_PASSWORD"), 1);
+        ResultsRepository results = new ResultsRepository(pool, 1024);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            results.close();  // write what is still queued
+            if (results.isTerminated()) pool.close();  // else the flusher still writes through it
+        }, "results-close"));
+        return results;
+    }
+
+    /** Queue the result of the game that just ended; the database is written in the background */
+    private void recordResult() {
+        if (RESULTS != null && !RESULTS.offer(new ResultsRepository.GameResult(PLAYER,
+                (gameMode == GameMode.HUMAN_VS_AI) ? difficulty : null, humanSeed, board, currentState))) {
+            System.err.println("Game result dropped: " + RESULTS.stats());
+        }
     }
 
     private String getResultMessage() {
@@ -49,35 +154,27 @@ public class GameMain extends JPanel {
         addMouseListener(new MouseAdapter() {
             @Override
             public void mouseClicked(MouseEvent e) {
-                int mouseX = e.getX() - (getWidth() - Board.CANVAS_WIDTH) / 2;
+                int mouseX = e.getX() - getBoardOffset();
                 int mouseY = e.getY();
-                int row = mouseY / Cell.SIZE;
-                int col = mouseX / Cell.SIZE;
+                int row = Math.floorDiv(mouseY, boardView.getCellSize());
+                int col = Math.floorDiv(mouseX, boardView.getCellSize());
 
+                if (aiThinking) {
+                    return; // wait for the AI's reply
+                }
                 if (currentState == State.PLAYING) {
-                    if (row >= 0 && row < Board.ROWS && col >= 0 && col < Board.COLS
-                            && board.cells[row][col].content == Seed.NO_SEED) {
+                    if (row >= 0 && row < board.getRows() && col >= 0 && col < board.getCols()
+                            && board.isEmpty(row, col)) {
                         currentState = board.stepGame(currentPlayer, row, col);
+                        if (JOURNAL != null) JOURNAL.move(gameId, currentPlayer, row, col, currentState);
+                        if (currentState != State.PLAYING) recordResult();
                         SoundEffect.EAT_FOOD.play();
-                        repaint();
+                        repaintCell(row, col);
 
+                        currentPlayer = (currentPlayer == Seed.CROSS) ? Seed.NOUGHT : Seed.CROSS;
+                        updateStatusBar();
                         if (gameMode == GameMode.HUMAN_VS_AI && currentState == State.PLAYING) {
-                            currentPlayer = (currentPlayer == Seed.CROSS) ? Seed.NOUGHT : Seed.CROSS;
-
-                            Timer timer = new Timer(600, evt -> {
-                                AIPlayer ai = new AIPlayer(board, currentPlayer, difficulty);
-                                Point move = ai.getAIMove();
-                                currentState = board.stepGame(currentPlayer, move.x, move.y);
-                                SoundEffect.DIE.play();
-                                if (currentState == State.PLAYING) {
-                                    currentPlayer = (currentPlayer == Seed.CROSS) ? Seed.NOUGHT : Seed.CROSS;
-                                }
-                                repaint();
-                            });
-                            timer.setRepeats(false);
-                            timer.start();
-                        } else {
-                            currentPlayer = (currentPlayer == Seed.CROSS) ? Seed.NOUGHT : Seed.CROSS;
+                            startAIMove();
                         }
                     }
                 } else {
@@ -96,16 +193,14 @@ public class GameMain extends JPanel {
 
                     if (option == JOptionPane.YES_OPTION) {
                         initGame(); // Reset ulang game
-                        repaint();
+                        repaint();  // every cell was cleared
                     } else if (option == JOptionPane.NO_OPTION) {
+                        cancelAIMove();
                         if (mainFrame != null) {
                             mainFrame.showPage("mainMenu");
                         }
                     }
                 }
-
-
-                repaint();
             }
         });
 
@@ -119,40 +214,160 @@ public class GameMain extends JPanel {
 
         setLayout(new BorderLayout());
         add(statusBar, BorderLayout.PAGE_END);
-        setPreferredSize(new Dimension(Board.CANVAS_WIDTH, Board.CANVAS_HEIGHT + 30));
         setBorder(BorderFactory.createLineBorder(new Color(247, 255, 0), 2));
     }
 
-    public void initGame() {
-        board = new Board();
-        for (int row = 0; row < Board.ROWS; ++row) {
-            for (int col = 0; col < Board.COLS; ++col) {
-                board.cells[row][col].content = Seed.NO_SEED;
+    /**
+     * Search the AI's reply on a snapshot of the board in the background, then play it
+     * on the EDT, no sooner than AI_MOVE_DELAY_MILLIS after the human's move. If the
+     * engine pondered on this move, the reply is ready at once.
+     */
+    private void startAIMove() {
+        if (engine == null) {
+            engine = new PonderingEngine(rows, cols, winLength, currentPlayer, difficulty);
+            engine.setThreads(Runtime.getRuntime().availableProcessors());
+        }
+        stopPondering();
+        Board snapshot = new Board(rows, cols, winLength);
+        snapshot.copyFrom(board);
+        PonderingEngine ai = engine;
+        int request = ++aiRequest;
+        AtomicBoolean cancelled = new AtomicBoolean();
+        aiMoveCancelled = cancelled;
+        aiThinking = true;
+        pendingAIMove = AI_EXECUTOR.submit(() -> {
+            long start = System.nanoTime();
+            Move move = ai.replyTo(snapshot, cancelled::get);
+            long waitMillis = AI_MOVE_DELAY_MILLIS - (System.nanoTime() - start) / 1_000_000;
+            if (waitMillis > 0) {
+                try {
+                    Thread.sleep(waitMillis);
+                } catch (InterruptedException e) {
+                    return; // cancelled
+                }
             }
+            SwingUtilities.invokeLater(() -> applyAIMove(request, move));
+        });
+    }
+
+    /** Play the AI's reply (on the EDT), unless it was cancelled meanwhile; then ponder */
+    private void applyAIMove(int request, Move move) {
+        if (request != aiRequest) {
+            return;
         }
-        currentState = State.PLAYING;
+        aiThinking = false;
+        pendingAIMove = null;
+        currentState = board.stepGame(currentPlayer, move.row, move.col);
+        if (JOURNAL != null) JOURNAL.move(gameId, currentPlayer, move.row, move.col, currentState);
+        if (currentState != State.PLAYING) recordResult();
+        SoundEffect.DIE.play();
+        if (currentState == State.PLAYING) {
+            currentPlayer = (currentPlayer == Seed.CROSS) ? Seed.NOUGHT : Seed.CROSS;
+            startPondering();
+        }
+        repaintCell(move.row, move.col);
+        updateStatusBar();
+    }
+
+    /** Let the engine search the human's likely replies while the human thinks */
+    private void startPondering() {
+        if (!engine.isPonderingUseful()) {
+            return;
+        }
+        Board snapshot = new Board(rows, cols, winLength);
+        snapshot.copyFrom(board);
+        PonderingEngine ai = engine;
+        AtomicBoolean cancelled = new AtomicBoolean();
+        ponderCancelled = cancelled;
+        pendingPonder = AI_EXECUTOR.submit(() -> ai.ponder(snapshot, cancelled::get));
+    }
 
-        SoundEffect.initGame(); // Tambahkan ini agar semua clip reload
-        if (!SoundEffect.BACKGROUND.clip.isRunning()) {
-            SoundEffect.BACKGROUND.play();
+    /** Stop pondering; the executor runs tasks in order, so a reply queued next waits for it */
+    private void stopPondering() {
+        ponderCancelled.set(true);
+        if (pendingPonder != null) {
+            pendingPonder.cancel(false);
+            pendingPonder = null;
         }
     }
 
+    /** Stop the AI's pending search and pondering, if any; a reply that still arrives is ignored */
+    private void cancelAIMove() {
+        aiRequest++;
+        aiThinking = false;
+        stopPondering();
+        aiMoveCancelled.set(true);
+        if (pendingAIMove != null) {
+            pendingAIMove.cancel(true);
+            pendingAIMove = null;
+        }
+    }
+
+    public void initGame() {
+        cancelAIMove();
+        engine = null; // a new engine (and table) for every game
+        board = new Board(rows, cols, winLength);
+        boardView = new BoardView(board);
+        currentState = State.PLAYING;
+        shown = false;
+        humanSeed = currentPlayer;
+        if (JOURNAL != null) {
+            if (gameId != 0) JOURNAL.close(gameId);
+            gameId = Math.max(gameId + 1, System.currentTimeMillis());
+            JOURNAL.newGame(gameId, rows, cols, winLength,
+                    (gameMode == GameMode.HUMAN_VS_AI) ? difficulty : null, humanSeed);
+        }
+        setPreferredSize(new Dimension(boardView.getCanvasWidth(), boardView.getCanvasHeight() + 30));
+        if (statusBar != null) {
+            updateStatusBar();
+        }
+
+        SoundEffect.MUSIC.start(); // no-op if it is already playing
+    }
+
 
     @Override
     public void paintComponent(Graphics g) {
+        long start = System.nanoTime();
         super.paintComponent(g);
 
-        if (backgroundImage != null) {
-            g.drawImage(backgroundImage, 0, 0, getWidth(), getHeight(), this);
-        }
-
         Graphics2D g2d = (Graphics2D) g.create();
-        int xOffset = (getWidth() - Board.CANVAS_WIDTH) / 2;
-        g2d.translate(xOffset, 0);
-        board.paint(g2d);
+        if (USE_RENDER_CACHE) {
+            renderCache.paint(g2d, this, boardView);
+        } else {
+            if (backgroundImage != null) {
+                g2d.drawImage(backgroundImage, 0, 0, getWidth(), getHeight(), this);
+            }
+            g2d.translate(getBoardOffset(), 0);
+            boardView.paint(g2d);
+        }
         g2d.dispose();
+        recordPaintTime(System.nanoTime() - start);
+
+        if (!shown) {
+            shown = true;
+            if (mainFrame != null) {
+                mainFrame.gameShown();
+            }
+        }
+    }
+
+    /** Left edge of the board, which is centred horizontally */
+    private int getBoardOffset() {
+        return (getWidth() - boardView.getCanvasWidth()) / 2;
+    }
 
+    /** Repaint only the given cell, e.g. after a move; Swing merges the dirty regions of a frame */
+    private void repaintCell(int row, int col) {
+        int cellSize = boardView.getCellSize();
+        repaint(getBoardOffset() + col * cellSize, row * cellSize, cellSize, cellSize);
+    }
+
+    /**
+     * Show whose turn it is, or the result. Called when the state changes, never while
+     * painting: setText schedules a repaint of the label itself
+     */
+    private void updateStatusBar() {
         if (currentState == State.PLAYING) {
             statusBar.setForeground(Color.BLACK);
             statusBar.setText((currentPlayer == Seed.CROSS) ? "Spongebob's Turn" : "Patrick's Turn");
@@ -168,9 +383,21 @@ public class GameMain extends JPanel {
         }
     }
 
+    /** Print the paint time percentiles every PAINT_REPORT_FRAMES frames */
+    private void recordPaintTime(long nanos) {
+        paintTime.record(nanos);
+        if (paintTime.getCount() >= PAINT_REPORT_FRAMES) {
+            System.out.printf("Paint time over %d frames (render cache %s): p50 %d us, p90 %d us, max %d us%n",
+                    PAINT_REPORT_FRAMES, USE_RENDER_CACHE ? "on" : "off", paintTime.percentile(0.5),
+                    paintTime.percentile(0.9), paintTime.percentile(1));
+            paintTime.clear();
+        }
+    }
+
     // Optional - Getter dan Setter
     public void setCurrentPlayer(Seed player) {
         this.currentPlayer = player;
+        updateStatusBar();
     }
 
     public void setGameMode(GameMode mode) {
@@ -180,4 +407,11 @@ public class GameMain extends JPanel {
     public void setDifficulty(AIPlayer.Difficulty diff) {
         this.difficulty = diff;
     }
+
+    /** Board size of the following games; takes effect at the next initGame() */
+    public void setBoardSize(int rows, int cols, int winLength) {
+        this.rows = rows;
+        this.cols = cols;
+        this.winLength = winLength;
+    }
 }
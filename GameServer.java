@@ -0,0 +1,838 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.reflect.Method;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Headless game server: many games of a human (a network client) against the AI at once,
+ * over a line-based TCP protocol. Every request is one line of words, and every reply is
+ * one line, either
+ *   OK <game> <state> <board> <AI move>      e.g. "OK 7 PLAYING X../.O./... 1,1"
+ *   ERROR <message>
+ * where the board lists the rows top to bottom, separated by '/', and the AI move is
+ * "<row>,<col>" or "-" if the AI did not move.
+ *
+ * Requests:
+ *   NEW [<rows>x<cols>k<win length>] [EASY|MEDIUM|HARD|MCTS] [X|O]
+ *                     start a game (default 3x3k3 MEDIUM X); the client plays the given
+ *                     side and X moves first, so as O the reply already has the AI's move.
+ *                     Rows and columns are at most MAX_BOARD_SIZE, and the win length
+ *                     from 3 to the longer side
+ *   MOVE <game> <row> <col>   play a move; the reply has the AI's answer
+ *   RESIGN <game>     give up the game
+ *   STATE <game>      show the game
+ *   CLOSE <game>      forget the game
+ *   PLAYER <name>     name the player of this connection's games, for their results
+ *                     (default "guest")
+ *   STATS [<name>]    games, wins, draws and losses of the player (default: this one)
+ *   LEVELS            the same for the humans against each AI level, e.g. "OK EASY 10 6 2 2 ..."
+ *   TOP               the players with the most wins, as <name>:<wins>/<games>
+ *   QUIT              close the connection (and forget its games)
+ *
+ * Each connection has its own thread: a virtual thread where the JVM has them (Java 21
+ * and later), otherwise a platform thread. Games live in a SessionStore per board size,
+ * packed into arrays. A game belongs to the connection that created it: any connection
+ * may show it, but MOVE, RESIGN and CLOSE from another are refused, and it is forgotten
+ * when its connection goes away. A game restored from the journal belongs to the first
+ * connection that moves in, resigns or closes it. AI replies are searched on a
+ * bounded pool of -aiThreads threads, each with its own AIPlayers, reused from game to
+ * game; a reply that finds the pool's queue full is refused with "ERROR busy". The game
+ * is not locked during the search: it is marked as waiting for the AI instead.
+ *
+ * With -journal, every game is also written to a GameJournal in that directory, and
+ * on startup the games that were not closed are restored from it, under the same ids,
+ * its records going straight into the stores. The journal is then compacted to a
+ * snapshot of those games, so it never holds more than the games live at the last start
+ * and what happened since. A human move is journaled together with the AI's answer, so
+ * a restored game is never waiting for the AI.
+ *
+ * With -results, the result of every finished game is queued for a ResultsRepository
+ * at that JDBC URL (user -resultsUser, password in the environment variable
+ * TICTACTOE_DB_PASSWORD); a full queue drops results rather than slow the games down.
+ * STATS, LEVELS and TOP are then answered by a PlayerStats over that database.
+ *
+ * Run with: java GameServer [-port N] [-aiThreads N] [-aiQueue N] [-maxGames N] [-journal DIR]
+ *                           [-results URL] [-resultsUser USER]
+ */
+public class GameServer {
+    public static final int DEFAULT_PORT = 4567;
+    /** A connection silent this long is closed */
+    private static final int IDLE_TIMEOUT_MILLIS = 5 * 60 * 1000;
+    private static final long REPORT_INTERVAL_MILLIS = 10_000;
+    /** A game id is the index of its store above this many bits, then its handle in the store */
+    private static final int STORE_SHIFT = 48;
+    private static final int MAX_STORES = 1 << 15;
+    /** Largest number of rows or columns a client may ask for */
+    private static final int MAX_BOARD_SIZE = 19;
+    /** Searchers an AI thread keeps; it forgets them all when it needs more */
+    private static final int MAX_SEARCHERS = 64;
+    private static final String DEFAULT_PLAYER = "guest";
+    /** Results not yet written to the database, at most */
+    private static final int RESULTS_QUEUE = 65_536;
+    /** Records cached by PlayerStats, how long, and the players on the leaderboard */
+    private static final int STATS_CACHE_SIZE = 10_000;
+    private static final long STATS_TTL_MILLIS = 60_000;
+    private static final int LEADERBOARD_SIZE = 10;
+
+    /** An AIPlayer and the board it plays on, into which a game's position is copied */
+    private static final class Searcher {
+        final Board board;
+        final AIPlayer ai;
+
+        Searcher(Board board, AIPlayer ai) {
+            this.board = board;
+            this.ai = ai;
+        }
+    }
+
+    /** One connection: its player and the games it owns */
+    private static final class Client {
+        final Set<Long> owned = new HashSet<>();
+        String player = DEFAULT_PLAYER;
+    }
+
+    /** Searchers of one AI thread, by board size, difficulty and side */
+    private static final ThreadLocal<Map<String, Searcher>> SEARCHERS = ThreadLocal.withInitial(HashMap::new);
+
+    /** Game stores, one per board size; a store's index is part of the ids of its games */
+    private final AtomicReferenceArray<SessionStore> stores = new AtomicReferenceArray<>(MAX_STORES);
+    private final Map<String, Integer> storeIndex = new ConcurrentHashMap<>();
+    /** The connection each live game belongs to; a restored game has none until one claims it */
+    private final Map<Long, Client> owners = new ConcurrentHashMap<>();
+    /** Stores created so far, guarded by storeIndex */
+    private int storeCount;
+    private final int maxGames;
+    /** Journal of every game, or null */
+    private GameJournal journal;
+    /** Where finished games go, and the stats over them, or null */
+    private ResultsRepository results;
+    private PlayerStats stats;
+    private final ExecutorService connections = newConnectionExecutor();
+    private final ThreadPoolExecutor aiExecutor;
+    private final AtomicInteger openConnections = new AtomicInteger();
+    /** Human moves played with the AI's answer, for the load report */
+    private final AtomicLong movesPlayed = new AtomicLong();
+
+    /** A server with the given AI pool, holding up to maxGames games of each board size */
+    public GameServer(int aiThreads, int aiQueue, int maxGames) {
+        this.maxGames = maxGames;
+        AtomicInteger count = new AtomicInteger();
+        aiExecutor = new ThreadPoolExecutor(aiThreads, aiThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(aiQueue), r -> {
+                    Thread thread = new Thread(r, "server-ai-" + count.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /** A virtual thread per task if this JVM has them, otherwise a new platform thread per task */
+    private static ExecutorService newConnectionExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger count = new AtomicInteger();
+            return Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "server-connection-" + count.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /** Accept connections on the given socket until it is closed */
+    public void serve(ServerSocket serverSocket) throws IOException {
+        while (!serverSocket.isClosed()) {
+            Socket socket = serverSocket.accept();
+            connections.execute(() -> handle(socket));
+        }
+    }
+
+    /** Serve one connection until the client quits or goes away */
+    private void handle(Socket socket) {
+        openConnections.incrementAndGet();
+        Client client = new Client();
+        try (socket;
+             BufferedReader in = new BufferedReader(
+                     new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+             PrintWriter out = new PrintWriter(
+                     new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII))) {
+            socket.setSoTimeout(IDLE_TIMEOUT_MILLIS);
+            socket.setTcpNoDelay(true);
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] words = line.trim().split("\\s+");
+                if (words[0].equalsIgnoreCase("QUIT")) break;
+                out.println(execute(words, client));
+                out.flush();
+            }
+        } catch (SocketTimeoutException e) {
+            // idle client; its games are dropped below
+        } catch (IOException e) {
+            System.err.println("Connection failed: " + e);
+        } finally {
+            for (long id : client.owned) {
+                show(id, true);
+                owners.remove(id);
+            }
+            openConnections.decrementAndGet();
+        }
+    }
+
+    /** Run one request, returning the reply line */
+    private String execute(String[] words, Client client) {
+        try {
+            switch (words[0].toUpperCase()) {
+                case "NEW": return newGame(words, client);
+                case "MOVE": {
+                    long id = idOf(words);
+                    String refused = claim(id, client);
+                    if (refused != null) return refused;
+                    return move(id, Integer.parseInt(words[2]), Integer.parseInt(words[3]), client.player);
+                }
+                case "RESIGN": {
+                    long id = idOf(words);
+                    String refused = claim(id, client);
+                    return (refused != null) ? refused : resign(id, client.player);
+                }
+                case "STATE": return show(idOf(words), false);
+                case "CLOSE": {
+                    long id = idOf(words);
+                    String refused = claim(id, client);
+                    if (refused != null) return refused;
+                    client.owned.remove(id);
+                    String reply = show(id, true);
+                    owners.remove(id);
+                    return reply;
+                }
+                case "STATS": return playerStats((words.length > 1) ? words[1] : client.player);
+                case "LEVELS": return levelStats();
+                case "TOP": return leaderboard();
+                case "PLAYER": {
+                    if (words[1].length() > 64) return "ERROR player name too long";
+                    client.player = words[1];
+                    return "OK " + words[1];
+                }
+                default: return "ERROR unknown request " + words[0];
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            return "ERROR missing arguments";
+        } catch (IllegalArgumentException | IllegalStateException e) {  // NumberFormatException too
+            return "ERROR " + e.getMessage();
+        } catch (RuntimeException e) {
+            System.err.println("Request " + String.join(" ", words) + " failed: " + e);
+            return "ERROR internal error";
+        }
+    }
+
+    private String newGame(String[] words, Client client) {
+        int rows = Board.DEFAULT_ROWS, cols = Board.DEFAULT_COLS, winLength = Board.DEFAULT_WIN_LENGTH;
+        AIPlayer.Difficulty difficulty = AIPlayer.Difficulty.MEDIUM;
+        Seed humanSeed = Seed.CROSS;
+        for (int i = 1; i < words.length; i++) {
+            String word = words[i].toUpperCase();
+            int x = word.indexOf('X'), k = word.indexOf('K');
+            if (x > 0 && k > x) {
+                rows = Integer.parseInt(word.substring(0, x));
+                cols = Integer.parseInt(word.substring(x + 1, k));
+                winLength = Integer.parseInt(word.substring(k + 1));
+            } else if (word.equals("X") || word.equals("O")) {
+                humanSeed = word.equals("X") ? Seed.CROSS : Seed.NOUGHT;
+            } else {
+                try {
+                    difficulty = AIPlayer.Difficulty.valueOf(word);
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("unknown level " + words[i]);
+                }
+            }
+        }
+        if (!isSupported(rows, cols, winLength)) {
+            return "ERROR board " + rows + "x" + cols + "k" + winLength + " not supported (at most "
+                    + MAX_BOARD_SIZE + "x" + MAX_BOARD_SIZE + ", win length from 3 to the longer side)";
+        }
+        int index = storeFor(rows, cols, winLength);
+        SessionStore store = stores.get(index);
+        long handle = store.create(difficulty, humanSeed);
+        if (handle < 0) {
+            return "ERROR too many games";
+        }
+        long id = ((long) index << STORE_SHIFT) | handle;
+        owners.put(id, client);
+        client.owned.add(id);
+        if (humanSeed == Seed.CROSS) {
+            if (journal != null) {
+                ReentrantLock lock = store.lockOf(handle);
+                lock.lock();
+                try {
+                    journal.newGame(id, rows, cols, winLength, difficulty, humanSeed);
+                } finally {
+                    lock.unlock();
+                }
+            }
+            return show(id, false);
+        }
+        String reply = playAI(id, store.newBoard(), difficulty, Seed.CROSS, -1, client.player);
+        if (!reply.startsWith("OK")) {
+            client.owned.remove(id);  // dropped by takeBack()
+            owners.remove(id);
+        }
+        return reply;
+    }
+
+    /**
+     * Null if the client may change the game: it owns it, or takes a restored game nobody
+     * owns yet, or there is no such game (the request then says so). Otherwise the refusal.
+     */
+    private String claim(long id, Client client) {
+        Client owner = owners.get(id);
+        if (owner == null) {
+            if (!storeOf(id).isLive(handleOf(id))) return null;
+            owner = owners.putIfAbsent(id, client);
+            if (owner == null) {
+                client.owned.add(id);
+                return null;
+            }
+        }
+        return (owner == client) ? null : "ERROR game " + id + " belongs to another connection";
+    }
+
+    private static boolean isSupported(int rows, int cols, int winLength) {
+        return rows >= 1 && cols >= 1 && rows <= MAX_BOARD_SIZE && cols <= MAX_BOARD_SIZE && winLength >= 3
+                && winLength <= Math.max(rows, cols);
+    }
+
+    private String move(long id, int row, int col, String player) {
+        SessionStore store = storeOf(id);
+        long handle = handleOf(id);
+        Board board = store.newBoard();
+        AIPlayer.Difficulty difficulty;
+        Seed aiSeed;
+        ReentrantLock lock = store.lockOf(handle);
+        lock.lock();
+        try {
+            if (!store.isLive(handle)) {
+                return "ERROR no game " + id;
+            }
+            if (store.getState(handle) != State.PLAYING) {
+                return "ERROR game " + id + " is over";
+            }
+            if (store.isAIToMove(handle)) {
+                return "ERROR the AI is still thinking";
+            }
+            store.load(handle, board);
+            if (row < 0 || row >= board.getRows() || col < 0 || col >= board.getCols() || !board.isEmpty(row, col)) {
+                return "ERROR illegal move " + row + "," + col;
+            }
+            Seed humanSeed = store.getHumanSeed(handle);
+            State state = board.stepGame(humanSeed, row, col);
+            store.save(handle, board, state, state == State.PLAYING);
+            if (state != State.PLAYING) {
+                if (journal != null) journal.move(id, humanSeed, row, col, state);
+                recordResult(player, store, handle, board, state);
+                movesPlayed.incrementAndGet();
+                return reply(id, state, board, null);
+            }
+            difficulty = store.getDifficulty(handle);
+            aiSeed = (humanSeed == Seed.CROSS) ? Seed.NOUGHT : Seed.CROSS;
+        } finally {
+            lock.unlock();
+        }
+        String reply = playAI(id, board, difficulty, aiSeed, board.indexOf(row, col), player);
+        if (reply.startsWith("OK")) {
+            movesPlayed.incrementAndGet();
+        }
+        return reply;
+    }
+
+    private String resign(long id, String player) {
+        SessionStore store = storeOf(id);
+        long handle = handleOf(id);
+        ReentrantLock lock = store.lockOf(handle);
+        lock.lock();
+        try {
+            if (!store.isLive(handle)) {
+                return "ERROR no game " + id;
+            }
+            Board board = store.newBoard();
+            store.load(handle, board);
+            if (store.getState(handle) == State.PLAYING) {
+                // An AI reply still being searched is then dropped
+                Seed humanSeed = store.getHumanSeed(handle);
+                State state = (humanSeed == Seed.CROSS) ? State.NOUGHT_WON : State.CROSS_WON;
+                store.setState(handle, state);
+                if (journal != null) journal.resign(id, state);
+                recordResult(player, store, handle, board, state);
+            }
+            return reply(id, store.getState(handle), board, null);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Reply with the game, and forget it if remove is set */
+    private String show(long id, boolean remove) {
+        SessionStore store = storeOf(id);
+        long handle = handleOf(id);
+        ReentrantLock lock = store.lockOf(handle);
+        lock.lock();
+        try {
+            if (!store.isLive(handle)) {
+                return "ERROR no game " + id;
+            }
+            Board board = store.newBoard();
+            store.load(handle, board);
+            State state = store.getState(handle);
+            if (remove) {
+                store.remove(handle);
+                if (journal != null) journal.close(id);
+            }
+            return reply(id, state, board, null);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Search the AI's reply to the position on the AI pool, waiting for it, then play it,
+     * unless the game was resigned or closed meanwhile. The game is marked as waiting for
+     * the AI, and is not locked during the search.
+     */
+    private String playAI(long id, Board position, AIPlayer.Difficulty difficulty, Seed aiSeed, int humanMove,
+                          String player) {
+        SessionStore store = storeOf(id);
+        long handle = handleOf(id);
+        Move move;
+        Future<Move> search = null;
+        try {
+            search = aiExecutor.submit(() -> searchReply(position, difficulty, aiSeed));
+            move = search.get();
+        } catch (RejectedExecutionException e) {
+            takeBack(id, humanMove);
+            return "ERROR busy";
+        } catch (InterruptedException e) {
+            search.cancel(true);
+            takeBack(id, humanMove);
+            Thread.currentThread().interrupt();
+            return "ERROR interrupted";
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+            takeBack(id, humanMove);
+            return "ERROR AI failed";
+        }
+
+        ReentrantLock lock = store.lockOf(handle);
+        lock.lock();
+        try {
+            if (!store.isLive(handle)) {
+                return "ERROR no game " + id;
+            }
+            Board board = store.newBoard();
+            store.load(handle, board);
+            if (!store.isAIToMove(handle)) {
+                return reply(id, store.getState(handle), board, null);  // resigned meanwhile
+            }
+            State state = board.stepGame(aiSeed, move.row, move.col);
+            store.save(handle, board, state, false);
+            if (journal != null) {
+                Seed humanSeed = (aiSeed == Seed.CROSS) ? Seed.NOUGHT : Seed.CROSS;
+                if (humanMove < 0) {
+                    journal.newGame(id, board.getRows(), board.getCols(), board.getWinLength(), difficulty, humanSeed);
+                } else {
+                    journal.move(id, humanSeed, humanMove / board.getCols(), humanMove % board.getCols(),
+                            State.PLAYING);
+                }
+                journal.move(id, aiSeed, move.row, move.col, state);
+            }
+            if (state != State.PLAYING) {
+                recordResult(player, store, handle, board, state);
+            }
+            return reply(id, state, board, move);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Queue the result of a game that just ended, if results are kept; never waits */
+    private void recordResult(String player, SessionStore store, long handle, Board board, State state) {
+        if (results != null) {
+            results.offer(new ResultsRepository.GameResult(player, store.getDifficulty(handle),
+                    store.getHumanSeed(handle), board, state));
+        }
+    }
+
+    /** Keep the results of finished games in the repository from now on, and answer stats requests with stats */
+    public void setResults(ResultsRepository results, PlayerStats stats) {
+        this.results = results;
+        this.stats = stats;
+    }
+
+    private String playerStats(String player) {
+        if (stats == null) return "ERROR no results kept";
+        try {
+            return "OK " + player + " " + stats.player(player);
+        } catch (Exception e) {
+            System.err.println("Stats of " + player + " failed: " + e);
+            return "ERROR stats unavailable";
+        }
+    }
+
+    private String levelStats() {
+        if (stats == null) return "ERROR no results kept";
+        StringBuilder sb = new StringBuilder("OK");
+        try {
+            for (AIPlayer.Difficulty level : AIPlayer.Difficulty.values()) {
+                sb.append(' ').append(level).append(' ').append(stats.level(level));
+            }
+        } catch (Exception e) {
+            System.err.println("Level stats failed: " + e);
+            return "ERROR stats unavailable";
+        }
+        return sb.toString();
+    }
+
+    private String leaderboard() {
+        if (stats == null) return "ERROR no results kept";
+        StringBuilder sb = new StringBuilder("OK");
+        for (PlayerStats.Standing standing : stats.leaderboard()) {
+            sb.append(' ').append(standing);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The AI could not reply: take back the human's move (the cell humanMove), so the
+     * client may try again, or drop a new game the AI was to open (-1)
+     */
+    private void takeBack(long id, int humanMove) {
+        SessionStore store = storeOf(id);
+        long handle = handleOf(id);
+        ReentrantLock lock = store.lockOf(handle);
+        lock.lock();
+        try {
+            if (!store.isLive(handle) || !store.isAIToMove(handle)) {
+                return;
+            }
+            if (humanMove < 0) {
+                store.remove(handle);
+            } else {
+                Board board = store.newBoard();
+                store.load(handle, board);
+                board.clear(humanMove);
+                store.save(handle, board, State.PLAYING, false);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Runs on an AI thread: search the position with that thread's AIPlayer for it */
+    private static Move searchReply(Board position, AIPlayer.Difficulty difficulty, Seed aiSeed) {
+        String key = position.getRows() + "x" + position.getCols() + "k" + position.getWinLength()
+                + difficulty + aiSeed;
+        Map<String, Searcher> searchers = SEARCHERS.get();
+        Searcher searcher = searchers.get(key);
+        if (searcher == null) {
+            if (searchers.size() == MAX_SEARCHERS) {
+                searchers.clear();
+            }
+            Board own = position.newEmptyBoard();
+            searcher = new Searcher(own, new AIPlayer(own, aiSeed, difficulty));
+            searchers.put(key, searcher);
+        }
+        searcher.board.copyFrom(position);
+        return searcher.ai.getAIMove();
+    }
+
+    /** Index of the store of the given board size, created on first use */
+    private int storeFor(int rows, int cols, int winLength) {
+        String key = rows + "x" + cols + "k" + winLength;
+        Integer index = storeIndex.get(key);
+        if (index != null) return index;
+        synchronized (storeIndex) {
+            index = storeIndex.get(key);
+            if (index == null) {
+                if (storeCount == MAX_STORES) {
+                    throw new IllegalStateException("too many board sizes");
+                }
+                index = storeCount++;
+                stores.set(index, new SessionStore(rows, cols, winLength, maxGames));
+                storeIndex.put(key, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Restore the games of the journal in the given directory that were not closed, then
+     * compact the journal to a snapshot of them and journal every game there from now on.
+     * Call before serve().
+     */
+    public void openJournal(Path directory) throws IOException {
+        long start = System.nanoTime();
+        journal = new GameJournal(directory);
+        Restorer restorer = new Restorer();
+        GameJournal.replay(GameJournal.segments(directory), restorer);
+        long restored = 0;
+        for (int i = 0; i < storeCount; i++) {
+            SessionStore store = stores.get(i);
+            if (store != null) {
+                store.finishRestore();
+                restored += store.size();
+            }
+        }
+        long replayed = System.nanoTime();
+        int dropped = journal.compact(this::snapshot);
+        System.out.printf("Restored %,d games from %s in %.1f ms, snapshot written in %.1f ms, %d old segments "
+                + "deleted%n", restored, directory, (replayed - start) / 1e6, (System.nanoTime() - replayed) / 1e6,
+                dropped);
+        if (restorer.skipped > 0) {
+            System.err.printf("Skipped %,d games of the journal that do not fit this server%n", restorer.skipped);
+        }
+    }
+
+    /**
+     * Puts the journal's records straight into the stores. Games this server cannot have
+     * written (no AI, a board size it does not support, a store index or slot out of
+     * range, a board size under another store index than the first game of that size)
+     * are skipped and counted; their later records find no live game and are ignored.
+     */
+    private final class Restorer implements GameJournal.Handler {
+        int skipped;
+
+        @Override
+        public void newGame(long gameId, int rows, int cols, int winLength, AIPlayer.Difficulty difficulty,
+                            Seed humanSeed) {
+            long index = gameId >>> STORE_SHIFT;
+            int slot = (int) handleOf(gameId);
+            if (index >= MAX_STORES || difficulty == null || !isSupported(rows, cols, winLength) || slot < 0
+                    || slot >= maxGames) {
+                skipped++;
+                return;
+            }
+            String key = rows + "x" + cols + "k" + winLength;
+            SessionStore store = stores.get((int) index);
+            if (store == null) {
+                if (storeIndex.containsKey(key)) {
+                    skipped++;
+                    return;
+                }
+                store = new SessionStore(rows, cols, winLength, maxGames);
+                stores.set((int) index, store);
+                storeIndex.put(key, (int) index);
+                storeCount = Math.max(storeCount, (int) index + 1);
+            } else if (!Integer.valueOf((int) index).equals(storeIndex.get(key))) {
+                skipped++;
+                return;
+            }
+            store.restore(handleOf(gameId), difficulty, humanSeed, store.newBoard(), State.PLAYING);
+        }
+
+        @Override
+        public void move(long gameId, Seed player, int row, int col, State state) {
+            SessionStore store = liveStoreOf(gameId);
+            if (store == null) return;
+            long handle = handleOf(gameId);
+            Board board = store.newBoard();
+            store.load(handle, board);
+            State replayed = GameJournal.replayMove(gameId, board, store.getState(handle), player, row, col, state);
+            if (replayed != null) {
+                store.save(handle, board, replayed, false);
+            }
+        }
+
+        @Override
+        public void place(long gameId, Seed player, int row, int col, State state) {
+            SessionStore store = liveStoreOf(gameId);
+            if (store == null) return;
+            long handle = handleOf(gameId);
+            Board board = store.newBoard();
+            store.load(handle, board);
+            if (GameJournal.replayPlace(gameId, board, player, row, col)) {
+                store.save(handle, board, state, false);
+            }
+        }
+
+        @Override
+        public void resign(long gameId, State state) {
+            SessionStore store = liveStoreOf(gameId);
+            if (store != null) store.setState(handleOf(gameId), state);
+        }
+
+        @Override
+        public void close(long gameId) {
+            long index = gameId >>> STORE_SHIFT;
+            int slot = (int) handleOf(gameId);
+            SessionStore store = (index < MAX_STORES) ? stores.get((int) index) : null;
+            if (store != null && slot >= 0 && slot < maxGames) {
+                store.retire(handleOf(gameId));
+            }
+        }
+
+        /** The store of the game, if it is live there; else null: skipped, or begun before the journal */
+        private SessionStore liveStoreOf(long gameId) {
+            long index = gameId >>> STORE_SHIFT;
+            SessionStore store = (index < MAX_STORES) ? stores.get((int) index) : null;
+            return (store != null && store.isLive(handleOf(gameId))) ? store : null;
+        }
+    }
+
+    /**
+     * Write every live game to the journal's snapshot, then the last id of every free
+     * slot, which the restored stores then exist to retire
+     */
+    private void snapshot(GameJournal snapshot) {
+        for (boolean live : new boolean[] {true, false}) {
+            for (int i = 0; i < storeCount; i++) {
+                SessionStore store = stores.get(i);
+                if (store == null) continue;
+                long index = (long) i << STORE_SHIFT;
+                Board board = store.newBoard();
+                store.forEachSlot(handle -> {
+                    if (!store.isLive(handle)) {
+                        if (!live) snapshot.close(index | handle);
+                    } else if (live) {
+                        store.load(handle, board);
+                        snapshot.snapshotGame(index | handle, board, store.getDifficulty(handle),
+                                store.getHumanSeed(handle), store.getState(handle));
+                    }
+                });
+            }
+        }
+    }
+
+    private long idOf(String[] words) {
+        long id = Long.parseLong(words[1]);
+        if (id < 0 || (id >>> STORE_SHIFT) >= MAX_STORES || stores.get((int) (id >>> STORE_SHIFT)) == null) {
+            throw new IllegalArgumentException("no game " + words[1]);
+        }
+        return id;
+    }
+
+    private SessionStore storeOf(long id) {
+        return stores.get((int) (id >>> STORE_SHIFT));
+    }
+
+    private static long handleOf(long id) {
+        return id & ((1L << STORE_SHIFT) - 1);
+    }
+
+    /** The reply line for a game */
+    private static String reply(long id, State state, Board board, Move aiMove) {
+        StringBuilder sb = new StringBuilder(32 + board.getCellCount() + board.getRows());
+        sb.append("OK ").append(id).append(' ').append(state).append(' ');
+        for (int row = 0; row < board.getRows(); row++) {
+            if (row > 0) sb.append('/');
+            for (int col = 0; col < board.getCols(); col++) {
+                Seed seed = board.getContent(row, col);
+                sb.append(seed == Seed.CROSS ? 'X' : seed == Seed.NOUGHT ? 'O' : '.');
+            }
+        }
+        sb.append(' ');
+        if (aiMove == null) {
+            sb.append('-');
+        } else {
+            sb.append(aiMove.row).append(',').append(aiMove.col);
+        }
+        return sb.toString();
+    }
+
+    /** Print the load every REPORT_INTERVAL_MILLIS, forever */
+    private void report() {
+        long lastMoves = 0;
+        while (true) {
+            try {
+                Thread.sleep(REPORT_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long games = 0;
+            for (int i = 0; i < MAX_STORES; i++) {
+                SessionStore store = stores.get(i);
+                if (store != null) games += store.size();
+            }
+            long moves = movesPlayed.get();
+            System.out.printf("%d connections, %,d games, %,.0f moves/s, AI queue %d%n", openConnections.get(),
+                    games, (moves - lastMoves) * 1000.0 / REPORT_INTERVAL_MILLIS, aiExecutor.getQueue().size());
+            if (results != null) {
+                System.out.println("Results: " + results.stats());
+                System.out.println("Stats: " + stats.stats());
+            }
+            lastMoves = moves;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+        int aiThreads = Runtime.getRuntime().availableProcessors();
+        int aiQueue = 4096;
+        int maxGames = 10_000_000;
+        Path journalDirectory = null;
+        String resultsUrl = null, resultsUser = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "-port": port = Integer.parseInt(args[i + 1]); break;
+                case "-aiThreads": aiThreads = Integer.parseInt(args[i + 1]); break;
+                case "-aiQueue": aiQueue = Integer.parseInt(args[i + 1]); break;
+                case "-maxGames": maxGames = Integer.parseInt(args[i + 1]); break;
+                case "-journal": journalDirectory = Paths.get(args[i + 1]); break;
+                case "-results": resultsUrl = args[i + 1]; break;
+                case "-resultsUser": resultsUser = args[i + 1]; break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(2);
+            }
+        }
+        GameServer server = new GameServer(aiThreads, aiQueue, maxGames);
+        if (journalDirectory != null) {
+            server.openJournal(journalDirectory);
+        }
+        if (resultsUrl != null) {
+            ConnectionPool pool = new ConnectionPool(resultsUrl, resultsUser, System.getenv("TICTACTOE_DB_PASSWORD"), 4);
+            ResultsRepository results = new ResultsRepository(pool, RESULTS_QUEUE);
+            try {
+                server.setResults(results, new PlayerStats(pool, results, STATS_CACHE_SIZE, STATS_TTL_MILLIS,
+                        LEADERBOARD_SIZE));
+            } catch (SQLException e) {
+                System.err.println("Cannot read the results at " + resultsUrl + ": " + e);
+                System.exit(1);
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                results.close();  // write what is still queued
+                if (results.isTerminated()) pool.close();  // else the flusher still writes through it
+            }, "results-close"));
+        }
+        Thread reporter = new Thread(server::report, "server-report");
+        reporter.setDaemon(true);
+        reporter.start();
+        try (ServerSocket serverSocket = new ServerSocket(port, 1024)) {
+            System.out.printf("Game server on port %d, %d AI threads%n", port, aiThreads);
+            server.serve(serverSocket);
+        }
+    }
+}
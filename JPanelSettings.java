@@ -3,8 +3,6 @@ import java.awt.*;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
-import java.net.URL;
-
 import javax.sound.sampled.Clip;
 import javax.sound.sampled.FloatControl;
 
@@ -13,6 +11,7 @@ public class JPanelSettings extends JPanel {
     private final JComboBox<String> modeCombo;
     private final JComboBox<String> symbolCombo;
     private final JComboBox<String> levelCombo;
+    private final JComboBox<String> boardCombo;
     private final JSlider volumeSlider;
     private Image backgroundImage;
 
@@ -20,11 +19,11 @@ public class JPanelSettings extends JPanel {
         this.mainFrame = mainFrame;
         setLayout(new GridBagLayout());
 
-        // Load background
-        URL bgURL = getClass().getClassLoader().getResource("images/jellyfish.jpeg");
-        if (bgURL != null) {
-            backgroundImage = new ImageIcon(bgURL).getImage();
-        }
+        // Background, painted once the loader has decoded it
+        Assets.whenLoaded(Assets.BACKGROUND_IMAGE, image -> {
+            backgroundImage = image;
+            repaint();
+        });
 
         // Komponen UI
         JLabel title = new JLabel("Game Settings");
@@ -34,7 +33,8 @@ public class JPanelSettings extends JPanel {
 
         modeCombo = new JComboBox<>(new String[]{"Human vs Human", "Human vs AI"});
         symbolCombo = new JComboBox<>(new String[]{"Spongebob (X)", "Patrick (O)"});
-        levelCombo = new JComboBox<>(new String[]{"Easy", "Medium", "Hard"});
+        levelCombo = new JComboBox<>(new String[]{"Easy", "Medium", "Hard", "Monte Carlo"});
+        boardCombo = new JComboBox<>(new String[]{"3 x 3 (3 in a row)", "7 x 7 (4 in a row)", "15 x 15 (5 in a row)"});
 
         JButton startButton = new JButton("Start Game");
         startButton.addActionListener(e -> {
@@ -47,9 +47,14 @@ public class JPanelSettings extends JPanel {
             switch (levelCombo.getSelectedIndex()) {
                 case 1 -> difficulty = AIPlayer.Difficulty.MEDIUM;
                 case 2 -> difficulty = AIPlayer.Difficulty.HARD;
+                case 3 -> difficulty = AIPlayer.Difficulty.MCTS;
             }
 
-            mainFrame.setGameSettings(mode, difficulty, player);
+            // rows = cols, and the number in a row needed to win
+            int[][] boards = {{3, 3}, {7, 4}, {15, 5}};
+            int[] size = boards[boardCombo.getSelectedIndex()];
+
+            mainFrame.setGameSettings(mode, difficulty, player, size[0], size[0], size[1]);
             mainFrame.startGame();
         });
 
@@ -66,24 +71,8 @@ public class JPanelSettings extends JPanel {
         volumeSlider.setPaintLabels(true);
         volumeSlider.setOpaque(false);
         volumeSlider.addChangeListener(e -> {
-            int value = volumeSlider.getValue(); // 0 - 100
-            if (SoundEffect.BACKGROUND.clip != null && SoundEffect.BACKGROUND.clip.isOpen()) {
-                FloatControl control = (FloatControl) SoundEffect.BACKGROUND.clip.getControl(FloatControl.Type.MASTER_GAIN);
-
-                float min = control.getMinimum(); // biasanya -80.0 dB
-                float gain;
-
-                if (value == 0) {
-                    gain = min; // mute
-                } else {
-                    // Konversi ke gain logaritmis agar terasa natural
-                    float volumeLinear = value / 100f;
-                    gain = (float) (20f * Math.log10(volumeLinear)); // konversi ke dB
-                    gain = Math.max(gain, min); // pastikan tidak melebihi batas minimal
-                }
-
-                control.setValue(gain);
-            }
+            // 0 - 100, converted to a logarithmic gain by the music stream
+            SoundEffect.MUSIC.setVolume(volumeSlider.getValue());
         });
 
 
@@ -112,6 +101,11 @@ public class JPanelSettings extends JPanel {
         gbc.gridy++;
         add(levelCombo, gbc);
 
+        gbc.gridy++;
+        add(new JLabel("Board:"), gbc);
+        gbc.gridy++;
+        add(boardCombo, gbc);
+
         gbc.gridy++;
         add(volumeLabel, gbc);
         gbc.gridy++;
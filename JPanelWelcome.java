@@ -1,16 +1,18 @@
 import javax.swing.*;
 import java.awt.*;
-import java.net.URL;
 
 public class JPanelWelcome extends JPanel {
+    private final MainFrame frame;
     private Image backgroundImage;
+    private boolean shown;
 
     public JPanelWelcome(MainFrame frame) {
-        // Load background
-        URL bgURL = getClass().getClassLoader().getResource("images/jellyfish.jpeg");
-        if (bgURL != null) {
-            backgroundImage = new ImageIcon(bgURL).getImage();
-        }
+        this.frame = frame;
+        // Background, painted once the loader has decoded it
+        Assets.whenLoaded(Assets.BACKGROUND_IMAGE, image -> {
+            backgroundImage = image;
+            repaint();
+        });
 
         setLayout(new BorderLayout());
 
@@ -36,5 +38,9 @@ public class JPanelWelcome extends JPanel {
         if (backgroundImage != null) {
             g.drawImage(backgroundImage, 0, 0, getWidth(), getHeight(), this);
         }
+        if (!shown) {
+            shown = true;
+            frame.firstFrameShown();
+        }
     }
 }
@@ -0,0 +1,77 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies for percentiles, in log-linear microsecond buckets: exact up
+ * to 32 us, then 16 buckets per power of two (within about 6%).
+ *
+ * One thread records; any thread may read it meanwhile. Counts are published with
+ * lazySet, so recording never waits, and a reader merges the histograms of several
+ * writers with addTo() instead of the writers sharing one.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /** Count one latency; only the owning thread may call this */
+    public void record(long nanos) {
+        int bucket = bucketOf(Math.max(0, nanos / 1000));
+        counts.lazySet(bucket, counts.get(bucket) + 1);
+    }
+
+    /** Add this histogram's counts into target, whose owner is the calling thread */
+    public void addTo(LatencyHistogram target) {
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            long count = counts.get(bucket);
+            if (count != 0) {
+                target.counts.lazySet(bucket, target.counts.get(bucket) + count);
+            }
+        }
+    }
+
+    /** Empty the histogram; only the owning thread may call this */
+    public void clear() {
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            counts.lazySet(bucket, 0);
+        }
+    }
+
+    public long getCount() {
+        long total = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            total += counts.get(bucket);
+        }
+        return total;
+    }
+
+    /**
+     * Latency in microseconds below which the given fraction (0 to 1) of the counts lie,
+     * rounded up to the top of its bucket; 0 if nothing was recorded
+     */
+    public long percentile(double fraction) {
+        long total = getCount();
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= rank) return highestValueOf(bucket);
+        }
+        return highestValueOf(BUCKETS - 1);
+    }
+
+    private static int bucketOf(long micros) {
+        if (micros < 2 * SUB_BUCKETS) return (int) micros;
+        int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (micros >>> shift) - SUB_BUCKETS;
+    }
+
+    private static long highestValueOf(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        long mantissa = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
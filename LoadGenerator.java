@@ -0,0 +1,214 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Load generator for GameServer: many clients, each on its own connection, playing
+ * random legal moves against the AI game after game, as fast as the server answers.
+ * While it runs it prints the games per second and the percentiles of the MOVE round
+ * trip (the human's move and the AI's reply).
+ *
+ * Run with: java LoadGenerator [options]
+ *   -host H        server host (default localhost)
+ *   -port N        server port (default GameServer.DEFAULT_PORT)
+ *   -local         start a server in this JVM instead, on a free port
+ *   -clients N     connections (default 64)
+ *   -seconds S     how long to run (default 30)
+ *   -board B       board size as <rows>x<cols>k<win length> (default 3x3k3)
+ *   -levels LIST   difficulties, comma separated, used in turn (default EASY,MEDIUM,HARD)
+ *   -interval S    seconds between reports (default 5)
+ */
+public class LoadGenerator {
+    /** Counters of a client */
+    private static final int GAMES = 0, MOVES = 1, ERRORS = 2, COUNTERS = 3;
+
+    private final String host;
+    private final int port;
+    private final String boardSize;
+    private final String[] levels;
+    private long deadline;
+    private CountDownLatch finished;
+
+    private LoadGenerator(String host, int port, String boardSize, String[] levels) {
+        this.host = host;
+        this.port = port;
+        this.boardSize = boardSize;
+        this.levels = levels;
+    }
+
+    /** One connection playing games until the deadline; its counters are written by its own thread only */
+    private final class Client implements Runnable {
+        final AtomicLongArray counters = new AtomicLongArray(COUNTERS);
+        final LatencyHistogram latency = new LatencyHistogram();
+        private final SplittableRandom random;
+        private final int index;
+
+        Client(int index, SplittableRandom random) {
+            this.index = index;
+            this.random = random;
+        }
+
+        @Override
+        public void run() {
+            try (Socket socket = new Socket(host, port);
+                 BufferedReader in = new BufferedReader(
+                         new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+                 PrintWriter out = new PrintWriter(
+                         new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII))) {
+                socket.setTcpNoDelay(true);
+                long game = 0;
+                while (System.nanoTime() < deadline) {
+                    String level = levels[(int) ((index + game++) % levels.length)];
+                    playGame(in, out, level);
+                }
+                out.println("QUIT");
+                out.flush();
+            } catch (IOException e) {
+                System.err.println("Client " + index + " failed: " + e);
+            } finally {
+                finished.countDown();
+            }
+        }
+
+        /** Play one game as X with random moves, then close it on the server */
+        private void playGame(BufferedReader in, PrintWriter out, String level) throws IOException {
+            String[] reply = request(in, out, "NEW " + boardSize + " " + level + " X");
+            if (reply == null) return;
+            String id = reply[1];
+            while (reply != null && reply[2].equals("PLAYING")) {
+                String cells = reply[3];
+                int cols = cells.indexOf('/') < 0 ? cells.length() : cells.indexOf('/');
+                int empties = 0;
+                for (int i = 0; i < cells.length(); i++) {
+                    if (cells.charAt(i) == '.') empties++;
+                }
+                int pick = random.nextInt(empties);
+                int at = -1;
+                for (int i = 0; pick >= 0; i++) {
+                    if (cells.charAt(i) == '.' && pick-- == 0) at = i;
+                }
+                long start = System.nanoTime();
+                reply = request(in, out, "MOVE " + id + " " + at / (cols + 1) + " " + at % (cols + 1));
+                latency.record(System.nanoTime() - start);
+                add(MOVES);
+            }
+            if (reply != null) add(GAMES);
+            request(in, out, "CLOSE " + id);
+        }
+
+        /** Send a request and split its reply into words; null, counted as an error, if it failed */
+        private String[] request(BufferedReader in, PrintWriter out, String line) throws IOException {
+            out.println(line);
+            out.flush();
+            String reply = in.readLine();
+            if (reply == null) throw new IOException("connection closed");
+            if (!reply.startsWith("OK ")) {
+                add(ERRORS);
+                return null;
+            }
+            return reply.split(" ");
+        }
+
+        private void add(int counter) {
+            counters.lazySet(counter, counters.get(counter) + 1);
+        }
+    }
+
+    /** Run the clients until the deadline, reporting every intervalMillis */
+    private void run(int clients, long seconds, long intervalMillis) throws InterruptedException {
+        finished = new CountDownLatch(clients);
+        deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        SplittableRandom seeds = new SplittableRandom();
+        Client[] all = new Client[clients];
+        for (int i = 0; i < clients; i++) {
+            all[i] = new Client(i, seeds.split());
+            Thread thread = new Thread(all[i], "load-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        long start = System.nanoTime();
+        long lastNanos = start, lastGames = 0;
+        boolean running = true;
+        while (running) {
+            running = !finished.await(intervalMillis, TimeUnit.MILLISECONDS);
+            long now = System.nanoTime();
+            lastGames = report(all, now - start, now - lastNanos, lastGames);
+            lastNanos = now;
+        }
+    }
+
+    /** Print the merged counters; returns the number of games played so far */
+    private long report(Client[] clients, long elapsedNanos, long intervalNanos, long lastGames) {
+        long[] totals = new long[COUNTERS];
+        LatencyHistogram latency = new LatencyHistogram();
+        for (Client client : clients) {
+            for (int i = 0; i < COUNTERS; i++) {
+                totals[i] += client.counters.get(i);
+            }
+            client.latency.addTo(latency);
+        }
+        System.out.printf("[%6.1f s] %,d games, %,.0f games/s, %,d moves, %,d errors, move latency us p50 %,d p90 %,d p99 %,d max %,d%n",
+                elapsedNanos / 1e9, totals[GAMES], (totals[GAMES] - lastGames) * 1e9 / Math.max(1, intervalNanos),
+                totals[MOVES], totals[ERRORS], latency.percentile(0.5), latency.percentile(0.9),
+                latency.percentile(0.99), latency.percentile(1));
+        return totals[GAMES];
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String host = "localhost";
+        int port = GameServer.DEFAULT_PORT;
+        boolean local = false;
+        int clients = 64;
+        long seconds = 30;
+        String board = "3x3k3";
+        String levelList = "EASY,MEDIUM,HARD";
+        double interval = 5;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-local")) {
+                local = true;
+                continue;
+            }
+            if (i + 1 == args.length) break;
+            switch (args[i]) {
+                case "-host": host = args[++i]; break;
+                case "-port": port = Integer.parseInt(args[++i]); break;
+                case "-clients": clients = Integer.parseInt(args[++i]); break;
+                case "-seconds": seconds = Long.parseLong(args[++i]); break;
+                case "-board": board = args[++i]; break;
+                case "-levels": levelList = args[++i]; break;
+                case "-interval": interval = Double.parseDouble(args[++i]); break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        if (local) {
+            ServerSocket serverSocket = new ServerSocket(0, 1024);
+            GameServer server = new GameServer(Runtime.getRuntime().availableProcessors(), 4096, 10_000_000);
+            Thread thread = new Thread(() -> {
+                try {
+                    server.serve(serverSocket);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }, "server-accept");
+            thread.setDaemon(true);
+            thread.start();
+            host = "localhost";
+            port = serverSocket.getLocalPort();
+        }
+        System.out.printf("%d clients on %s:%d for %d s, %s %s%n", clients, host, port, seconds, board, levelList);
+        new LoadGenerator(host, port, board, levelList.split(",")).run(Math.max(1, clients), seconds,
+                (long) (interval * 1000));
+    }
+}
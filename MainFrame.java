@@ -2,12 +2,20 @@ import javax.swing.*;
 import java.awt.*;
 
 public class MainFrame extends JFrame {
+    /** Startup timings: when the program started, and when the last game was requested */
+    private static final long LAUNCH_NANOS = System.nanoTime();
+    private long gameRequestedNanos;
+
     private final CardLayout cardLayout;
     private final JPanel cards;
+    private final GamePage gamePage;
 
     private GameMain.GameMode gameMode;
     private AIPlayer.Difficulty difficulty;
     private Seed currentPlayer;
+    private int rows = Board.DEFAULT_ROWS;
+    private int cols = Board.DEFAULT_COLS;
+    private int winLength = Board.DEFAULT_WIN_LENGTH;
 
     public MainFrame() {
         setTitle("Tic Tac Toe");
@@ -23,6 +31,7 @@ public class MainFrame extends JFrame {
 
         cards.add(welcome, "mainMenu");
         cards.add(settings, "settings");
+        gamePage = new GamePage(cards);
         add(cards);
 
         showPage("welcome");
@@ -32,24 +41,124 @@ public class MainFrame extends JFrame {
         cardLayout.show(cards, name);
     }
 
-    public void setGameSettings(GameMain.GameMode mode, AIPlayer.Difficulty difficulty, Seed player) {
+    public void setGameSettings(GameMain.GameMode mode, AIPlayer.Difficulty difficulty, Seed player,
+                                int rows, int cols, int winLength) {
         this.gameMode = mode;
         this.difficulty = difficulty;
         this.currentPlayer = player;
+        this.rows = rows;
+        this.cols = cols;
+        this.winLength = winLength;
+    }
+
+    /** Log how long the welcome screen took to show, counted from launch */
+    void firstFrameShown() {
+        System.out.printf("First frame shown %.1f ms after launch%n", (System.nanoTime() - LAUNCH_NANOS) / 1e6);
+    }
+
+    /** Log how long the game page took to show, counted from startGame() */
+    void gameShown() {
+        if (gameRequestedNanos != 0) {
+            System.out.printf("Game shown %.1f ms after Start Game%n", (System.nanoTime() - gameRequestedNanos) / 1e6);
+            gameRequestedNanos = 0;
+        }
     }
 
     public void startGame() {
-        GameMain gamePanel = new GameMain(this, gameMode, difficulty, currentPlayer);
-        cards.add(gamePanel, "game");
+        gameRequestedNanos = System.nanoTime();
+        gamePage.start(this, gameMode, difficulty, currentPlayer, rows, cols, winLength);
         showPage("game");
     }
 
+    /** The "game" card: one GameMain, created at the first game and reset for every later one */
+    static final class GamePage {
+        private final JPanel cards;
+        private GameMain gamePanel;
+
+        GamePage(JPanel cards) {
+            this.cards = cards;
+        }
+
+        void start(MainFrame owner, GameMain.GameMode mode, AIPlayer.Difficulty difficulty, Seed player,
+                   int rows, int cols, int winLength) {
+            if (gamePanel == null) {
+                gamePanel = new GameMain(owner, mode, difficulty, player, rows, cols, winLength);
+                cards.add(gamePanel, "game");
+            } else {
+                // Reconfigure the one game page in place, so panels do not pile up in the card layout
+                gamePanel.setGameMode(mode);
+                gamePanel.setDifficulty(difficulty);
+                gamePanel.setBoardSize(rows, cols, winLength);
+                gamePanel.setCurrentPlayer(player);
+                gamePanel.initGame();
+                gamePanel.revalidate();
+                gamePanel.repaint();
+            }
+        }
+    }
+
     // method main ini agar bisa dijalankan
-    public static void main(String[] args) {
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length == 1 && args[0].equals("check")) {
+            soakCheck();
+            return;
+        }
+        Assets.preload(); // decode images and sounds while Swing starts and the welcome screen shows
         SwingUtilities.invokeLater(() -> {
             MainFrame frame = new MainFrame();
             frame.setVisible(true);
         });
     }
+
+    /**
+     * Soak check, headless: start 3000 games on one game page, cycling through the
+     * board sizes, and fail if the page's card count grows or the heap after GC rises by
+     * more than 4 MB from games 500-1000 to games 2500-3000. The heap is sampled every 250
+     * games and the lowest sample of each range is compared, as whatever else runs in the
+     * JVM (mvn runs the checks in its own) only ever adds to a sample.
+     */
+    private static void soakCheck() throws InterruptedException {
+        final int games = 3000, sampleEvery = 250;
+        final long slack = 4L << 20;  // a leaked game page is ~10 KB, so 2000 of them are well above it
+        SoundEffect.volume = SoundEffect.Volume.MUTE;  // no music thread per game
+        JPanel cards = new JPanel(new CardLayout());
+        GamePage page = new GamePage(cards);
+        long warmHeap = Long.MAX_VALUE, endHeap = Long.MAX_VALUE;
+        int failures = 0;
+        for (int game = 1; game <= games; game++) {
+            int size = 3 + game % 3;
+            page.start(null, GameMain.GameMode.HUMAN_VS_AI, AIPlayer.Difficulty.HARD, Seed.CROSS, size, size, 3);
+            if (game % sampleEvery == 0 && game > 500 && (game <= 1000 || game > 2500)) {
+                long heap = heapAfterGC();
+                if (game <= 1000) {
+                    warmHeap = Math.min(warmHeap, heap);
+                } else {
+                    endHeap = Math.min(endHeap, heap);
+                }
+            }
+        }
+        if (cards.getComponentCount() != 1) {
+            System.err.println("MainFrame: " + cards.getComponentCount() + " cards after " + games + " games");
+            failures++;
+        }
+        System.out.printf("MainFrame: %d games on one page, heap after GC %,d KB at games 500-1000, %,d KB at the end%n",
+                games, warmHeap / 1024, endHeap / 1024);
+        if (endHeap - warmHeap > slack) {
+            System.err.printf("MainFrame: heap grew by %,d KB over 2000 games%n", (endHeap - warmHeap) / 1024);
+            failures++;
+        }
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static long heapAfterGC() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
 }
 
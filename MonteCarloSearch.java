@@ -0,0 +1,388 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Monte Carlo Tree Search (UCT) used by AIPlayer's MCTS difficulty. It needs no
+ * evaluation function: positions are scored by random playouts to the end of the game.
+ *
+ * Search is root-parallel: each worker grows its own tree on its own board copy, and
+ * the visit counts of the root moves are summed at the end. Trees are kept in flat
+ * primitive arrays and playouts reuse scratch arrays, so a running search allocates
+ * nothing. Each worker keeps its tree between moves and re-roots it at the position
+ * reached after the AI's and the opponent's move, so earlier playouts still count.
+ */
+public class MonteCarloSearch {
+    /** UCT exploration constant */
+    private static final double EXPLORATION = 1.4;
+    /** Nodes per worker tree; once full, leaves are no longer expanded until the tree is rebuilt */
+    private static final int NODE_CAPACITY = 1 << 18;
+    /** Boards larger than this only expand cells near the seeds already played */
+    private static final int MAX_FULL_WIDTH_CELLS = 16;
+    private static final int NEAR_RADIUS = 2;
+    /** Playouts run between two looks at the clock */
+    private static final int CLOCK_CHECK_INTERVAL = 16;
+
+    private final Seed aiSeed;
+    private final Worker[] workers;
+
+    /** Statistics of the last search */
+    private long playouts;
+    private long elapsedNanos;
+
+    /** Constructor for a searcher playing aiSeed, with up to maxWorkers threads */
+    public MonteCarloSearch(Seed aiSeed, int maxWorkers) {
+        this.aiSeed = aiSeed;
+        this.workers = new Worker[Math.max(1, maxWorkers)];
+    }
+
+    /**
+     * Run playouts from the board's position with aiSeed to move until the deadline
+     * (System.nanoTime()) or maxPlayouts (0 = no limit) is reached, on the given number of
+     * workers, or until cancelled says so. Every worker draws from its own stream split off
+     * random, so a search with a playout limit is reproducible from random's seed. Returns
+     * the cell index of the most visited root move, or -1 if there is none.
+     */
+    public int search(Board board, long deadline, long maxPlayouts, int threads, ForkJoinPool pool,
+                      BooleanSupplier cancelled, SplittableRandom random) {
+        long start = System.nanoTime();
+        threads = Math.max(1, Math.min(threads, workers.length));
+        long budget = (maxPlayouts > 0) ? Math.max(1, maxPlayouts / threads) : 0;
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            if (workers[i] == null) {
+                workers[i] = new Worker(board, aiSeed);
+            }
+            Worker worker = workers[i];
+            worker.prepare(board, random.split());
+            tasks.add(() -> {
+                worker.run(deadline, budget, cancelled);
+                return null;
+            });
+        }
+        if (threads == 1) {
+            workers[0].run(deadline, budget, cancelled);
+        } else {
+            pool.invokeAll(tasks);
+        }
+
+        // Sum the root visit counts over the workers; the most visited move is the most trusted
+        long[] visitsByCell = new long[board.getCellCount()];
+        playouts = 0;
+        for (int i = 0; i < threads; i++) {
+            playouts += workers[i].addRootVisits(visitsByCell);
+        }
+        int best = -1;
+        for (int cell = 0; cell < visitsByCell.length; cell++) {
+            if (visitsByCell[cell] > 0 && (best < 0 || visitsByCell[cell] > visitsByCell[best])) {
+                best = cell;
+            }
+        }
+        for (int i = 0; i < threads; i++) {
+            workers[i].remember(board);
+        }
+        elapsedNanos = System.nanoTime() - start;
+        return best;
+    }
+
+    /** Drop the trees, so the next search owes nothing to earlier games */
+    public void newGame() {
+        for (Worker worker : workers) {
+            if (worker != null) {
+                worker.root = -1;
+            }
+        }
+    }
+
+    /** Number of playouts run by the last search */
+    public long getPlayouts() {
+        return playouts;
+    }
+
+    /** Playouts per second of the last search, over all workers */
+    public double getPlayoutsPerSecond() {
+        return (elapsedNanos == 0) ? 0 : playouts * 1e9 / elapsedNanos;
+    }
+
+    /** One search thread: a tree in flat arrays, a board copy and scratch space */
+    private static final class Worker {
+        /** Node has no known result / the player who moved into it won / the game is drawn */
+        private static final byte OPEN = 0, WON = 1, DRAWN = 2;
+
+        private final Board board;
+        private final Seed aiSeed, opponentSeed;
+        private SplittableRandom random;
+        private final boolean nearMovesOnly;
+
+        // Tree, one array element per node; children of a node are stored next to each other
+        private final int[] move = new int[NODE_CAPACITY];
+        private final int[] firstChild = new int[NODE_CAPACITY];
+        private final int[] childCount = new int[NODE_CAPACITY];
+        private final int[] visits = new int[NODE_CAPACITY];
+        /** Sum of results from the point of view of the player who moved into the node */
+        private final double[] wins = new double[NODE_CAPACITY];
+        private final byte[] result = new byte[NODE_CAPACITY];
+        private int nodeCount;
+        private int root = -1;
+        private long rootPlayouts;
+
+        /** Position the tree's root stands for, to re-root it on the next search */
+        private final long[] rootCross, rootNought;
+
+        // Scratch space
+        private final int[] path;
+        private final int[] played;
+        private final int[] candidates;
+
+        Worker(Board shape, Seed aiSeed) {
+            this.board = new Board(shape.getRows(), shape.getCols(), shape.getWinLength());
+            this.aiSeed = aiSeed;
+            this.opponentSeed = (aiSeed == Seed.CROSS) ? Seed.NOUGHT : Seed.CROSS;
+            int cells = shape.getCellCount();
+            this.nearMovesOnly = cells > MAX_FULL_WIDTH_CELLS;
+            rootCross = new long[board.wordCount()];
+            rootNought = new long[board.wordCount()];
+            path = new int[cells + 1];
+            played = new int[cells];
+            candidates = new int[cells];
+        }
+
+        /** Copy the position, and keep the part of the tree below it if there is one */
+        void prepare(Board real, SplittableRandom random) {
+            this.random = random;
+            board.copyFrom(real);
+            // A tree that is mostly used up is rebuilt rather than re-rooted
+            boolean reusable = root >= 0 && nodeCount < NODE_CAPACITY / 4 * 3;
+            int node = reusable ? descend(root, aiSeed, real) : -1;
+            if (node < 0) {
+                nodeCount = 0;
+                node = newNode(-1);
+            }
+            root = node;
+            rootPlayouts = 0;
+        }
+
+        /**
+         * Follow the AI's move and then the opponent's move from the remembered root,
+         * if the real board is exactly that position. Returns the new root, or -1.
+         */
+        private int descend(int node, Seed aiToMove, Board real) {
+            int aiMove = -1, opponentMove = -1;
+            for (int word = 0; word < rootCross.length; word++) {
+                long aiBits = (aiToMove == Seed.CROSS) ? real.crossBits[word] : real.noughtBits[word];
+                long oppBits = (aiToMove == Seed.CROSS) ? real.noughtBits[word] : real.crossBits[word];
+                long aiOld = (aiToMove == Seed.CROSS) ? rootCross[word] : rootNought[word];
+                long oppOld = (aiToMove == Seed.CROSS) ? rootNought[word] : rootCross[word];
+                if ((aiOld & ~aiBits) != 0 || (oppOld & ~oppBits) != 0) return -1;  // not a continuation
+                long aiNew = aiBits & ~aiOld, oppNew = oppBits & ~oppOld;
+                if (Long.bitCount(aiNew) + Long.bitCount(oppNew) > 0) {
+                    if (Long.bitCount(aiNew) > 1 || Long.bitCount(oppNew) > 1) return -1;
+                    if (aiNew != 0) {
+                        if (aiMove >= 0) return -1;
+                        aiMove = (word << 6) + Long.numberOfTrailingZeros(aiNew);
+                    }
+                    if (oppNew != 0) {
+                        if (opponentMove >= 0) return -1;
+                        opponentMove = (word << 6) + Long.numberOfTrailingZeros(oppNew);
+                    }
+                }
+            }
+            if (aiMove < 0 && opponentMove < 0) return node;  // same position
+            if (aiMove < 0 || opponentMove < 0) return -1;
+            int child = findChild(node, aiMove);
+            return (child < 0) ? -1 : findChild(child, opponentMove);
+        }
+
+        private int findChild(int node, int cell) {
+            for (int c = firstChild[node], end = c + childCount[node]; c < end; c++) {
+                if (move[c] == cell) return c;
+            }
+            return -1;
+        }
+
+        /** Remember the position of the root, for the next prepare() */
+        void remember(Board real) {
+            System.arraycopy(real.crossBits, 0, rootCross, 0, rootCross.length);
+            System.arraycopy(real.noughtBits, 0, rootNought, 0, rootNought.length);
+        }
+
+        private int newNode(int cell) {
+            int node = nodeCount++;
+            move[node] = cell;
+            firstChild[node] = 0;
+            childCount[node] = 0;
+            visits[node] = 0;
+            wins[node] = 0;
+            result[node] = OPEN;
+            return node;
+        }
+
+        /** Run selection, expansion, playout and backpropagation until out of time or playouts */
+        void run(long deadline, long maxPlayouts, BooleanSupplier cancelled) {
+            if (board.isFull()) return;
+            for (long n = 1; ; n++) {
+                iterate();
+                rootPlayouts++;
+                if (maxPlayouts > 0 && rootPlayouts >= maxPlayouts) return;
+                if (n % CLOCK_CHECK_INTERVAL == 0
+                        && (cancelled.getAsBoolean() || System.nanoTime() >= deadline)) return;
+            }
+        }
+
+        private void iterate() {
+            int node = root;
+            int depth = 0;
+            Seed toMove = aiSeed;
+            path[0] = node;
+
+            // Selection: walk down fully expanded nodes by UCT
+            while (childCount[node] > 0 && result[node] == OPEN) {
+                node = selectChild(node);
+                board.place(toMove, move[node]);
+                played[depth++] = move[node];
+                path[depth] = node;
+                toMove = (toMove == Seed.CROSS) ? Seed.NOUGHT : Seed.CROSS;
+            }
+
+            double aiResult;  // 1 = AI wins, 0.5 = draw, 0 = AI loses
+            if (result[node] != OPEN) {
+                // The player who moved into the node is the one not to move now
+                aiResult = (result[node] == DRAWN) ? 0.5 : (toMove == aiSeed) ? 0.0 : 1.0;
+            } else {
+                // Expansion: add the children, then play out from one of them
+                if (expand(node, toMove)) {
+                    node = firstChild[node] + random.nextInt(childCount[node]);
+                    board.place(toMove, move[node]);
+                    played[depth++] = move[node];
+                    path[depth] = node;
+                    toMove = (toMove == Seed.CROSS) ? Seed.NOUGHT : Seed.CROSS;
+                }
+                if (result[node] != OPEN) {
+                    aiResult = (result[node] == DRAWN) ? 0.5 : (toMove == aiSeed) ? 0.0 : 1.0;
+                } else {
+                    aiResult = playout(toMove);
+                }
+            }
+
+            // Backpropagation; path[i] was moved into by the AI when i is odd
+            for (int i = depth; i >= 0; i--) {
+                int n = path[i];
+                visits[n]++;
+                wins[n] += (i % 2 == 1) ? aiResult : 1.0 - aiResult;
+            }
+            for (int i = depth - 1; i >= 0; i--) {
+                board.clear(played[i]);
+            }
+        }
+
+        private int selectChild(int node) {
+            double logVisits = Math.log(visits[node]);
+            int best = -1;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (int c = firstChild[node], end = c + childCount[node]; c < end; c++) {
+                if (visits[c] == 0) return c;
+                double value = wins[c] / visits[c] + EXPLORATION * Math.sqrt(logVisits / visits[c]);
+                if (value > bestValue) {
+                    bestValue = value;
+                    best = c;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Create the children of node for the side to move. A winning move is the only
+         * child if there is one, else the cells blocking the other side's win, else every
+         * candidate cell. Returns false if the tree is full (the node stays a leaf).
+         */
+        private boolean expand(int node, Seed toMove) {
+            Seed other = (toMove == Seed.CROSS) ? Seed.NOUGHT : Seed.CROSS;
+            int count = 0;
+            boolean winning = false, blocking = false;
+            for (int cell = 0; cell < board.getCellCount(); cell++) {
+                if (!board.isEmpty(cell) || (nearMovesOnly && !hasSeedNear(cell))) continue;
+                boolean wins = board.isWinningMove(toMove, cell);
+                boolean blocks = !wins && board.isWinningMove(other, cell);
+                if (wins && !winning) {
+                    winning = true;
+                    count = 0;
+                } else if (blocks && !winning && !blocking) {
+                    blocking = true;
+                    count = 0;
+                }
+                if (winning ? wins : (!blocking || blocks)) {
+                    candidates[count++] = cell;
+                }
+            }
+            if (count == 0) {
+                // Empty large board: start in the middle
+                candidates[count++] = board.indexOf(board.getRows() / 2, board.getCols() / 2);
+            }
+            if (nodeCount + count > NODE_CAPACITY) return false;
+
+            firstChild[node] = nodeCount;
+            childCount[node] = count;
+            for (int i = 0; i < count; i++) {
+                int child = newNode(candidates[i]);
+                if (winning) {
+                    result[child] = WON;
+                } else if (board.emptyCount() == 1) {
+                    result[child] = DRAWN;
+                }
+            }
+            return true;
+        }
+
+        private boolean hasSeedNear(int cell) {
+            int rows = board.getRows(), cols = board.getCols();
+            int row = cell / cols, col = cell % cols;
+            for (int r = Math.max(0, row - NEAR_RADIUS); r <= Math.min(rows - 1, row + NEAR_RADIUS); r++) {
+                for (int c = Math.max(0, col - NEAR_RADIUS); c <= Math.min(cols - 1, col + NEAR_RADIUS); c++) {
+                    if (!board.isEmpty(r * cols + c)) return true;
+                }
+            }
+            return false;
+        }
+
+        /** Random playout to the end of the game on the board copy; returns the AI's result */
+        private double playout(Seed toMove) {
+            int empties = 0;
+            for (int word = 0; word < board.wordCount(); word++) {
+                for (long bits = board.emptyBits(word); bits != 0; bits &= bits - 1) {
+                    candidates[empties++] = (word << 6) + Long.numberOfTrailingZeros(bits);
+                }
+            }
+            double aiResult = 0.5;
+            int moves = 0;
+            for (; moves < empties; moves++) {
+                // Partial Fisher-Yates shuffle: draw the next cell among the ones left
+                int pick = moves + random.nextInt(empties - moves);
+                int cell = candidates[pick];
+                candidates[pick] = candidates[moves];
+                candidates[moves] = cell;
+                board.place(toMove, cell);
+                if (board.isWinningMove(toMove, cell)) {
+                    aiResult = (toMove == aiSeed) ? 1.0 : 0.0;
+                    moves++;
+                    break;
+                }
+                toMove = (toMove == Seed.CROSS) ? Seed.NOUGHT : Seed.CROSS;
+            }
+            for (int i = 0; i < moves; i++) {
+                board.clear(candidates[i]);
+            }
+            return aiResult;
+        }
+
+        /** Add the visit count of each root move to visitsByCell; returns the playouts run */
+        long addRootVisits(long[] visitsByCell) {
+            for (int c = firstChild[root], end = c + childCount[root]; c < end; c++) {
+                visitsByCell[move[c]] += visits[c];
+            }
+            return rootPlayouts;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+/**
+ * A move: the row and column of the cell to play. The engine's own type, so the
+ * engine needs no AWT (it replaces java.awt.Point, whose x and y were row and col).
+ */
+public final class Move {
+    public final int row;
+    public final int col;
+
+    public Move(int row, int col) {
+        this.row = row;
+        this.col = col;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Move && ((Move) o).row == row && ((Move) o).col == col;
+    }
+
+    @Override
+    public int hashCode() {
+        return row * 31 + col;
+    }
+
+    @Override
+    public String toString() {
+        return "(" + row + ", " + col + ")";
+    }
+}
@@ -0,0 +1,124 @@
+import java.io.IOException;
+import java.net.URL;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.FloatControl;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * A long track (background music) streamed from its file into a SourceDataLine, on its
+ * own daemon thread, looping until stopped. Only one small buffer is ever in memory,
+ * unlike a Clip, which holds the whole decoded track. At the end of the file the stream
+ * is reopened while the line still plays what it has buffered, so the loop is seamless.
+ */
+public class MusicStream {
+    /** Bytes read from the file and written to the line at a time */
+    private static final int CHUNK_BYTES = 8 * 1024;
+
+    private final String fileName;
+    /** Thread streaming the track; an old one that is no longer this stops soon */
+    private volatile Thread player;
+    private volatile SourceDataLine line;
+    /** Volume from 0 to 100, applied to the line whenever it changes */
+    private volatile int volume = 100;
+
+    public MusicStream(String fileName) {
+        this.fileName = fileName;
+    }
+
+    /** Start playing in a loop, unless already playing or sound is muted */
+    public synchronized void start() {
+        if (player != null || SoundEffect.volume == SoundEffect.Volume.MUTE) return;
+        Thread thread = new Thread(this::run, "music");
+        thread.setDaemon(true);
+        player = thread;
+        thread.start();
+    }
+
+    /** Stop playing and release the line */
+    public synchronized void stop() {
+        player = null;
+        SourceDataLine current = line;
+        if (current != null) {
+            current.stop();
+            current.flush();  // unblocks a pending write
+        }
+    }
+
+    public boolean isRunning() {
+        return player != null;
+    }
+
+    /** Set the volume, from 0 (silent) to 100 (full); safe to call from any thread */
+    public void setVolume(int volume) {
+        this.volume = Math.max(0, Math.min(100, volume));
+        SourceDataLine current = line;
+        if (current != null) {
+            applyVolume(current);
+        }
+    }
+
+    private void run() {
+        Thread self = Thread.currentThread();
+        URL url = getClass().getClassLoader().getResource(fileName);
+        if (url == null) {
+            System.err.println("Couldn't find file " + fileName);
+            finished(self);
+            return;
+        }
+        byte[] buffer = new byte[CHUNK_BYTES];
+        SourceDataLine out = null;
+        try {
+            while (player == self) {
+                try (AudioInputStream in = AudioSystem.getAudioInputStream(url)) {
+                    if (out == null) {
+                        AudioFormat format = in.getFormat();
+                        out = AudioSystem.getSourceDataLine(format);
+                        out.open(format, CHUNK_BYTES * 4);
+                        line = out;
+                        applyVolume(out);
+                        out.start();
+                    }
+                    // AudioInputStream reads whole frames, as long as the chunk holds some
+                    int frameSize = Math.max(1, in.getFormat().getFrameSize());
+                    int chunk = buffer.length - buffer.length % frameSize;
+                    long total = 0;
+                    int read;
+                    while (player == self && (read = in.read(buffer, 0, chunk)) > 0) {
+                        out.write(buffer, 0, read);
+                        total += read;
+                    }
+                    if (total == 0) break;  // an empty track would loop forever
+                }
+            }
+        } catch (UnsupportedAudioFileException | IOException | LineUnavailableException
+                 | IllegalArgumentException e) {
+            // IllegalArgumentException: no audio device, e.g. on a headless machine
+            e.printStackTrace();
+        } finally {
+            if (out != null) {
+                if (line == out) line = null;
+                out.close();
+            }
+            finished(self);
+        }
+    }
+
+    private synchronized void finished(Thread thread) {
+        if (player == thread) {
+            player = null;
+        }
+    }
+
+    /** Logarithmic gain, so the volume sounds natural; 0 is the quietest the line allows */
+    private void applyVolume(SourceDataLine target) {
+        if (!target.isControlSupported(FloatControl.Type.MASTER_GAIN)) return;
+        FloatControl control = (FloatControl) target.getControl(FloatControl.Type.MASTER_GAIN);
+        float min = control.getMinimum();
+        float gain = (volume == 0) ? min : (float) (20 * Math.log10(volume / 100.0));
+        control.setValue(Math.max(min, Math.min(control.getMaximum(), gain)));
+    }
+}
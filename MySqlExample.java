@@ -1,10 +1,14 @@
-import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.Locale;
 
+/**
+ * Print the version of a MySQL server, through a ConnectionPool like ResultsRepository.
+ * The password comes from -password or the environment variable TICTACTOE_DB_PASSWORD.
+ *
+ * Run with: java MySqlExample [-host H] [-port N] [-database D] [-username U] [-password P]
+ */
 public class MySqlExample {
     public static void main(String[] args) throws ClassNotFoundException {
         String host, port, databaseName, userName, password;
@@ -12,8 +16,7 @@ public class MySqlExample {
         port = "19505";
         databaseName = "defaultdb";
         userName = "avnadmin";
-        password = "null";
-                /*
+        password = System.getenv("TICTACTOE_DB_PASSWORD");
         for (int i = 0; i < args.length - 1; i++) {
             switch (args[i].toLowerCase(Locale.ROOT)) {
                 case "-host": host = args[++i]; break;
@@ -22,17 +25,18 @@ public class MySqlExample {
                 case "-database": databaseName = args[++i]; break;
                 case "-port": port = args[++i]; break;
             }
-        } */
+        }
         // JDBC allows to have nullable username and password
         if (host == null || port == null || databaseName == null) {
             System.out.println("Host, port, database information is required");
             return;
         }
         Class.forName("com.mysql.cj.jdbc.Driver");
-        try (final Connection connection =
-                     DriverManager.getConnection("jdbc:mysql://" + host + ":" + port + "/" + databaseName + "?sslmode=require", userName, password);
-             final Statement statement = connection.createStatement();
-             final ResultSet resultSet = statement.executeQuery("SELECT version() AS version")) {
+        String url = "jdbc:mysql://" + host + ":" + port + "/" + databaseName + "?sslmode=require";
+        try (ConnectionPool pool = new ConnectionPool(url, userName, password, 1);
+             ConnectionPool.Lease lease = pool.borrow(10_000);
+             Statement statement = lease.connection().createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT version() AS version")) {
 
             while (resultSet.next()) {
                 System.out.println("Version: " + resultSet.getString("version"));
@@ -42,4 +46,4 @@ public class MySqlExample {
             e.printStackTrace();
         }
     }
-}
\ No newline at end of file
+}
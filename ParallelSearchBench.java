@@ -0,0 +1,65 @@
+/**
+ * Measures the speedup of AIPlayer's parallel root split over the sequential search.
+ * Every fixed position is searched to a fixed depth with 1, 2, 4, ... threads, on a cold
+ * AIPlayer each time, and the move is checked against the sequential one. One untimed
+ * sequential search of every position runs first, to warm up the JIT.
+ *
+ * Run with: java ParallelSearchBench [maxThreads]
+ */
+public class ParallelSearchBench {
+    /** rows = cols, win length, depth, then the moves played so far as row, col pairs (CROSS first) */
+    private static final int[][] POSITIONS = {
+            {7, 4, 6, 3, 3, 2, 2, 3, 2},
+            {7, 4, 6, 3, 3, 3, 4, 2, 2, 4, 4, 2, 4},
+            {15, 5, 4, 7, 7, 7, 8, 8, 8, 6, 6, 8, 6},
+            {15, 5, 4, 7, 7, 8, 8, 6, 8, 8, 6, 7, 6, 6, 7},
+    };
+
+    public static void main(String[] args) {
+        int maxThreads = (args.length > 0) ? Integer.parseInt(args[0])
+                : Runtime.getRuntime().availableProcessors();
+        for (int[] position : POSITIONS) {
+            search(position, 1);
+        }
+        boolean allSame = true;
+        for (int[] position : POSITIONS) {
+            int size = position[0], winLength = position[1], depth = position[2];
+            System.out.printf("%dx%d, %d in a row, depth %d, %d seeds played%n",
+                    size, size, winLength, depth, (position.length - 3) / 2);
+            Move sequentialMove = null;
+            long sequentialNanos = 0;
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                AIPlayer ai = search(position, threads);
+                Move move = ai.getLastMove();
+                long nanos = ai.getElapsedNanos();
+                if (threads == 1) {
+                    sequentialMove = move;
+                    sequentialNanos = nanos;
+                }
+                boolean same = move.equals(sequentialMove);
+                allSame &= same;
+                System.out.printf("  threads %2d: %8.1f ms  %,12d nodes  speedup %5.2fx  move (%d,%d)%s%n",
+                        threads, nanos / 1e6, ai.getNodesVisited(), (double) sequentialNanos / nanos,
+                        move.row, move.col, same ? "" : "  DIFFERS FROM SEQUENTIAL");
+            }
+        }
+        if (!allSame) {
+            System.exit(1);
+        }
+    }
+
+    /** Set up the position on a new board and search it with a cold AIPlayer */
+    private static AIPlayer search(int[] position, int threads) {
+        Board board = new Board(position[0], position[0], position[1]);
+        Seed player = Seed.CROSS;
+        for (int i = 3; i < position.length; i += 2) {
+            board.stepGame(player, position[i], position[i + 1]);
+            player = (player == Seed.CROSS) ? Seed.NOUGHT : Seed.CROSS;
+        }
+        AIPlayer ai = new AIPlayer(board, player, AIPlayer.Difficulty.HARD);
+        ai.setBudget(0, 0, position[2]);  // no time limit, fixed depth
+        ai.setThreads(threads);
+        ai.getAIMove();
+        return ai;
+    }
+}
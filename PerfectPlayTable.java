@@ -0,0 +1,163 @@
+import java.io.*;
+import java.net.URL;
+
+/**
+ * Precomputed perfect play for the 3x3 board: the game-theoretic score and the
+ * best move (the one AIPlayer's minimax search picks) for every position and side to move.
+ *
+ * A position is indexed by its base-3 code (cell i contributes 3^i for CROSS and
+ * 2 * 3^i for NOUGHT), times two for the side to move. Each entry is one short:
+ * bits 0-3 hold the cell index of the best move (NO_MOVE if the game is over) and
+ * bits 4-8 hold the score + 10, from the mover's point of view, on the classic
+ * scale: 10 - plies to the end for a win, plies - 10 for a loss, 0 for a draw.
+ *
+ * The table is bundled as the resource RESOURCE. Regenerate or verify it with
+ *   java PerfectPlayTable generate data/perfect3x3.bin
+ *   java PerfectPlayTable check
+ */
+public class PerfectPlayTable {
+    public static final String RESOURCE = "data/perfect3x3.bin";
+    private static final int MAGIC = 0x54545433;  // "TTT3"
+    private static final int CELLS = 9;
+    private static final int POSITIONS = 19683;   // 3^9
+    private static final int NO_MOVE = 0xF;
+
+    /** Base-3 weight of every 9-bit occupancy mask, so a position is indexed in O(1) */
+    private static final int[] BASE3 = new int[1 << CELLS];
+    static {
+        for (int bits = 1; bits < BASE3.length; ++bits) {
+            int low = Integer.numberOfTrailingZeros(bits);
+            BASE3[bits] = BASE3[bits & (bits - 1)] + pow3(low);
+        }
+    }
+
+    /** Loaded on first use (lazy holder idiom); null if the resource is missing or corrupt */
+    private static final class Holder {
+        static final short[] ENTRIES = load();
+    }
+
+    private PerfectPlayTable() {}
+
+    /** Is the table available for lookups? */
+    public static boolean isAvailable() {
+        return Holder.ENTRIES != null;
+    }
+
+    /**
+     * Best move for the given side, or null if the table is unavailable,
+     * the board is not the classic 3x3 one, or the game is over
+     */
+    public static Move lookup(Board board, Seed toMove) {
+        short[] entries = Holder.ENTRIES;
+        if (entries == null || !board.isClassic()) return null;
+        int move = entries[indexOf(board, toMove)] & 0xF;
+        if (move == NO_MOVE) return null;
+        return new Move(move / 3, move % 3);
+    }
+
+    /** Score of the position for the given side on AIPlayer's scale (positive: it wins), or 0 if unavailable */
+    public static int scoreOf(Board board, Seed toMove) {
+        short[] entries = Holder.ENTRIES;
+        if (entries == null || !board.isClassic()) return 0;
+        int classic = ((entries[indexOf(board, toMove)] >> 4) & 0x1F) - 10;
+        return (classic > 0) ? AIPlayer.WIN_SCORE - 10 + classic
+                : (classic < 0) ? classic + 10 - AIPlayer.WIN_SCORE : 0;
+    }
+
+    /** AIPlayer's score converted to the classic scale stored in the table */
+    private static int toClassic(int score) {
+        return (score > 0) ? score - AIPlayer.WIN_SCORE + 10
+                : (score < 0) ? score + AIPlayer.WIN_SCORE - 10 : 0;
+    }
+
+    private static int indexOf(Board board, Seed toMove) {
+        int code = BASE3[(int) board.crossBits[0]] + 2 * BASE3[(int) board.noughtBits[0]];
+        return code * 2 + ((toMove == Seed.CROSS) ? 0 : 1);
+    }
+
+    private static short[] load() {
+        URL url = PerfectPlayTable.class.getClassLoader().getResource(RESOURCE);
+        if (url == null) {
+            System.err.println("Couldn't find file " + RESOURCE);
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(url.openStream()))) {
+            if (in.readInt() != MAGIC || in.readInt() != POSITIONS * 2) {
+                System.err.println("Unknown table format in " + RESOURCE);
+                return null;
+            }
+            short[] entries = new short[POSITIONS * 2];
+            for (int i = 0; i < entries.length; ++i) {
+                entries[i] = in.readShort();
+            }
+            return entries;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /** Compute every entry with AIPlayer's search */
+    static short[] generate() {
+        short[] entries = new short[POSITIONS * 2];
+        Board board = new Board();
+        AIPlayer crossAI = new AIPlayer(board, Seed.CROSS, AIPlayer.Difficulty.HARD);
+        AIPlayer noughtAI = new AIPlayer(board, Seed.NOUGHT, AIPlayer.Difficulty.HARD);
+        for (int code = 0; code < POSITIONS; ++code) {
+            board.newGame();
+            for (int i = 0, c = code; i < CELLS; ++i, c /= 3) {
+                if (c % 3 == 1) board.place(Seed.CROSS, i);
+                else if (c % 3 == 2) board.place(Seed.NOUGHT, i);
+            }
+            boolean playing = board.evaluate() == State.PLAYING;
+            for (int side = 0; side < 2; ++side) {
+                int entry = (10 << 4) | NO_MOVE;
+                if (playing) {
+                    AIPlayer ai = (side == 0) ? crossAI : noughtAI;
+                    Move move = ai.searchMove();
+                    entry = ((toClassic(ai.getLastScore()) + 10) << 4) | board.indexOf(move.row, move.col);
+                }
+                entries[code * 2 + side] = (short) entry;
+            }
+        }
+        return entries;
+    }
+
+    private static int pow3(int n) {
+        int p = 1;
+        while (n-- > 0) p *= 3;
+        return p;
+    }
+
+    /** Command-line entry: "generate <file>" writes the table, "check" verifies the bundled one */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 2 && args[0].equals("generate")) {
+            short[] entries = generate();
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(args[1])))) {
+                out.writeInt(MAGIC);
+                out.writeInt(entries.length);
+                for (short entry : entries) {
+                    out.writeShort(entry);
+                }
+            }
+            System.out.println("Wrote " + entries.length + " entries to " + args[1]);
+        } else if (args.length == 1 && args[0].equals("check")) {
+            short[] bundled = Holder.ENTRIES;
+            short[] expected = generate();
+            int mismatches = 0;
+            for (int i = 0; bundled != null && i < expected.length; ++i) {
+                if (bundled[i] != expected[i]) mismatches++;
+            }
+            if (bundled == null || mismatches > 0) {
+                System.err.println(RESOURCE + " is out of date (" + mismatches
+                        + " entries differ); regenerate it");
+                System.exit(1);
+            }
+            System.out.println(RESOURCE + " matches minimax (" + expected.length + " entries)");
+        } else {
+            System.err.println("Usage: java PerfectPlayTable generate <file> | check");
+            System.exit(2);
+        }
+    }
+}
@@ -0,0 +1,257 @@
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Statistics over the game_results table of a ResultsRepository: the record of a
+ * player, the record of the humans against each AI level, and a leaderboard.
+ *
+ * Records are queried through read-through caches (ReadThroughCache), so a stats
+ * request only reaches the database on a miss, and every batch the repository flushes
+ * invalidates just the players and levels it contains. The leaderboard is not queried
+ * at all after startup: the wins and games of every player are counted in memory as
+ * batches are flushed, and the top leaderboardSize players are kept sorted.
+ *
+ * Create it before results are queued to the repository, so no flushed result is
+ * counted twice (in the first query and by the listener) or missed.
+ */
+public class PlayerStats {
+    /** 1 if the human won the result's game, for SUM() */
+    private static final String WIN = "CASE WHEN outcome = CASE human_seed WHEN 'X' THEN 'CROSS_WON' "
+            + "ELSE 'NOUGHT_WON' END THEN 1 ELSE 0 END";
+    private static final String DRAW = "CASE WHEN outcome = 'DRAW' THEN 1 ELSE 0 END";
+    private static final String PLAYER_RECORD = "SELECT COUNT(*), SUM(" + WIN + "), SUM(" + DRAW
+            + ") FROM game_results WHERE player = ?";
+    private static final String LEVEL_RECORD = "SELECT COUNT(*), SUM(" + WIN + "), SUM(" + DRAW
+            + ") FROM game_results WHERE difficulty = ?";
+    private static final String ALL_PLAYERS = "SELECT player, SUM(" + WIN + "), COUNT(*) FROM game_results "
+            + "GROUP BY player";
+    private static final long CONNECTION_TIMEOUT_MILLIS = 1000;
+
+    /** Games won, drawn and lost */
+    public static final class Record {
+        public final long games, wins, draws;
+
+        Record(long games, long wins, long draws) {
+            this.games = games;
+            this.wins = wins;
+            this.draws = draws;
+        }
+
+        public long getLosses() {
+            return games - wins - draws;
+        }
+
+        /** Fraction of the games won; 0 before the first game */
+        public double getWinRate() {
+            return (games == 0) ? 0 : wins / (double) games;
+        }
+
+        @Override
+        public String toString() {
+            return games + " " + wins + " " + draws + " " + getLosses();
+        }
+    }
+
+    /** A player's place on the leaderboard: most wins first, then by name */
+    public static final class Standing {
+        public final String player;
+        public final long wins, games;
+
+        Standing(String player, long wins, long games) {
+            this.player = player;
+            this.wins = wins;
+            this.games = games;
+        }
+
+        @Override
+        public String toString() {
+            return player + ":" + wins + "/" + games;
+        }
+    }
+
+    /** Only wins rank, so a player's place only ever rises, and who drops off the top never returns unseen */
+    private static final Comparator<Standing> RANKING = Comparator.<Standing>comparingLong(s -> -s.wins)
+            .thenComparing(s -> s.player);
+
+    private final ConnectionPool pool;
+    private final ReadThroughCache<String, Record> players;
+    private final ReadThroughCache<AIPlayer.Difficulty, Record> levels;
+    private final int leaderboardSize;
+    /** Wins and games of every player, and the top of them; guarded by totals */
+    private final Map<String, Standing> totals = new HashMap<>();
+    private final TreeSet<Standing> leaders = new TreeSet<>(RANKING);
+
+    /**
+     * Stats of the results in the pool's database, at most cacheSize records of each kind
+     * cached for up to ttlMillis, kept up to date with the repository's flushes. Reads
+     * every player's totals once, for the leaderboard.
+     */
+    public PlayerStats(ConnectionPool pool, ResultsRepository results, int cacheSize, long ttlMillis,
+                       int leaderboardSize) throws SQLException {
+        this.pool = pool;
+        this.leaderboardSize = leaderboardSize;
+        players = new ReadThroughCache<>(player -> query(PLAYER_RECORD, player), cacheSize, ttlMillis);
+        levels = new ReadThroughCache<>(level -> query(LEVEL_RECORD, level.name()), cacheSize, ttlMillis);
+        loadTotals();
+        results.addFlushListener(this::flushed);
+    }
+
+    /** The player's record against the AI and other humans */
+    public Record player(String player) throws Exception {
+        return players.get(player);
+    }
+
+    /** The humans' record against the AI at this level */
+    public Record level(AIPlayer.Difficulty level) throws Exception {
+        return levels.get(level);
+    }
+
+    /** The players with the most wins, best first */
+    public List<Standing> leaderboard() {
+        synchronized (totals) {
+            return new ArrayList<>(leaders);
+        }
+    }
+
+    /** One line of cache stats, for the logs */
+    public String stats() {
+        return "players: " + players.stats() + "; levels: " + levels.stats();
+    }
+
+    private Record query(String sql, String key) throws SQLException {
+        try (ConnectionPool.Lease lease = pool.borrow(CONNECTION_TIMEOUT_MILLIS)) {
+            try {
+                PreparedStatement statement = lease.prepare(sql);
+                statement.setString(1, key);
+                try (ResultSet row = statement.executeQuery()) {
+                    row.next();
+                    return new Record(row.getLong(1), row.getLong(2), row.getLong(3));
+                }
+            } catch (SQLException e) {
+                lease.discard();
+                throw e;
+            }
+        }
+    }
+
+    private void loadTotals() throws SQLException {
+        try (ConnectionPool.Lease lease = pool.borrow(CONNECTION_TIMEOUT_MILLIS);
+             Statement statement = lease.connection().createStatement()) {
+            statement.execute(ResultsRepository.CREATE_TABLE);
+            try (ResultSet rows = statement.executeQuery(ALL_PLAYERS)) {
+                while (rows.next()) {
+                    add(rows.getString(1), rows.getLong(2), rows.getLong(3));
+                }
+            }
+        }
+    }
+
+    /** On the flusher thread: count the batch, and forget the cached records it changes */
+    private void flushed(List<ResultsRepository.GameResult> batch) {
+        Set<String> changed = new HashSet<>();
+        Set<AIPlayer.Difficulty> changedLevels = EnumSet.noneOf(AIPlayer.Difficulty.class);
+        for (ResultsRepository.GameResult result : batch) {
+            add(result.player, result.isWin() ? 1 : 0, 1);
+            changed.add(result.player);
+            if (result.difficulty != null) changedLevels.add(result.difficulty);
+        }
+        for (String player : changed) {
+            players.invalidate(player);
+        }
+        for (AIPlayer.Difficulty level : changedLevels) {
+            levels.invalidate(level);
+        }
+    }
+
+    /** Add to a player's totals, and move them up the leaderboard */
+    private void add(String player, long wins, long games) {
+        synchronized (totals) {
+            Standing old = totals.get(player);
+            Standing now = (old == null) ? new Standing(player, wins, games)
+                    : new Standing(player, old.wins + wins, old.games + games);
+            totals.put(player, now);
+            if (old != null) leaders.remove(old);
+            leaders.add(now);
+            if (leaders.size() > leaderboardSize) leaders.pollLast();
+        }
+    }
+
+    /**
+     * Check against an in-memory H2 database (on the test classpath): the cached records
+     * and the leaderboard must match fresh queries, before and after more results are
+     * flushed.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1 || !args[0].equals("check")) {
+            System.err.println("Usage: java PlayerStats check");
+            System.exit(2);
+        }
+        Class.forName("org.h2.Driver");  // registered with this class loader, as mvn runs each check in its own
+        ConnectionPool pool = new ConnectionPool("jdbc:h2:mem:stats-check;DB_CLOSE_DELAY=-1", "sa", "", 4);
+        ResultsRepository results = new ResultsRepository(pool, 4096);
+        PlayerStats stats = new PlayerStats(pool, results, 100, 60_000, 10);
+        AIPlayer.Difficulty[] levels = AIPlayer.Difficulty.values();
+        State[] outcomes = {State.CROSS_WON, State.NOUGHT_WON, State.DRAW};
+        SplittableRandom random = new SplittableRandom(42);
+        int failures = 0;
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 20_000; i++) {
+                int player = (int) Math.sqrt(random.nextInt(40_000));  // a few players play most games
+                results.offer(new ResultsRepository.GameResult("player" + player, levels[random.nextInt(levels.length)],
+                        random.nextBoolean() ? Seed.CROSS : Seed.NOUGHT, 3, 3, 3, outcomes[random.nextInt(3)], 7,
+                        System.currentTimeMillis()), 10, TimeUnit.SECONDS);
+            }
+            while (results.getWritten() < 20_000L * (round + 1)) {
+                Thread.sleep(10);
+            }
+            for (int query = 0; query < 10_000; query++) {
+                String player = "player" + (int) Math.sqrt(random.nextInt(40_000));
+                Record cached = stats.player(player);
+                if (query % 1000 == 0 && !cached.toString().equals(stats.query(PLAYER_RECORD, player).toString())) {
+                    System.err.println("PlayerStats: " + player + " cached " + cached + ", in the table "
+                            + stats.query(PLAYER_RECORD, player));
+                    failures++;
+                }
+            }
+            for (AIPlayer.Difficulty level : levels) {
+                if (!stats.level(level).toString().equals(stats.query(LEVEL_RECORD, level.name()).toString())) {
+                    System.err.println("PlayerStats: level " + level + " is stale");
+                    failures++;
+                }
+            }
+            List<Standing> top = new ArrayList<>();
+            try (ConnectionPool.Lease lease = pool.borrow(CONNECTION_TIMEOUT_MILLIS);
+                 Statement statement = lease.connection().createStatement();
+                 ResultSet rows = statement.executeQuery(ALL_PLAYERS.replace("GROUP BY player",
+                         "GROUP BY player ORDER BY 2 DESC, 1 LIMIT 10"))) {
+                while (rows.next()) {
+                    top.add(new Standing(rows.getString(1), rows.getLong(2), rows.getLong(3)));
+                }
+            }
+            if (!stats.leaderboard().toString().equals(top.toString())) {
+                System.err.println("PlayerStats: leaderboard " + stats.leaderboard() + ", in the table " + top);
+                failures++;
+            }
+        }
+        results.close();
+        pool.close();
+        System.out.println("PlayerStats: " + stats.stats());
+        if (failures > 0) {
+            System.exit(1);
+        }
+        System.out.println("PlayerStats: cached records and leaderboard match the table " + stats.leaderboard());
+    }
+}
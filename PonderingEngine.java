@@ -0,0 +1,145 @@
+import java.util.function.BooleanSupplier;
+
+/**
+ * The AI of one game. It keeps a single AIPlayer (and so its transposition table and
+ * Monte Carlo trees) for the whole game, and ponders while the human is thinking: it
+ * guesses the human's most likely replies and searches its own answer to each of them
+ * with the full per-move budget. If the human then plays one of those replies, the
+ * answer is returned at once, as strong as a normal search would have been.
+ *
+ * The engine is not thread-safe: ponder() and replyTo() must run on one thread, one
+ * after the other. Each call takes its own cancel signal, which another thread may raise.
+ */
+public class PonderingEngine {
+    /** Human replies pondered per turn, most likely first */
+    private static final int MAX_PONDER_REPLIES = 6;
+    /** Depth of the quick search that guesses the human's best reply */
+    private static final int PREDICTION_DEPTH = 2;
+
+    private final Board board;
+    private final Seed aiSeed, humanSeed;
+    private final AIPlayer.Difficulty difficulty;
+    /** Plays the AI's side on board */
+    private final AIPlayer ai;
+    /** Plays the human's side on board, to guess the human's replies */
+    private final AIPlayer opponentModel;
+
+    /** Position pondering started from (human to move), and the AI's answer to each human move */
+    private final long[] baseCross, baseNought;
+    private final int[] ponderedAnswer;
+    private final int[] candidates;
+
+    private long ponderHits, ponderMisses;
+
+    /** Constructor for a game on a rows-by-cols board, the AI playing aiSeed */
+    public PonderingEngine(int rows, int cols, int winLength, Seed aiSeed, AIPlayer.Difficulty difficulty) {
+        this.board = new Board(rows, cols, winLength);
+        this.aiSeed = aiSeed;
+        this.humanSeed = (aiSeed == Seed.CROSS) ? Seed.NOUGHT : Seed.CROSS;
+        this.difficulty = difficulty;
+        this.ai = new AIPlayer(board, aiSeed, difficulty);
+        this.opponentModel = new AIPlayer(board, humanSeed, AIPlayer.Difficulty.MEDIUM);
+        opponentModel.setBudget(0, 0, PREDICTION_DEPTH);
+        baseCross = new long[board.wordCount()];
+        baseNought = new long[board.wordCount()];
+        ponderedAnswer = new int[board.getCellCount()];
+        candidates = new int[board.getCellCount()];
+        java.util.Arrays.fill(ponderedAnswer, -1);
+    }
+
+    /** Split the AI's searches over this many threads */
+    public void setThreads(int threads) {
+        ai.setThreads(threads);
+    }
+
+    /** Does pondering help at this level? Random play and table lookups are instant anyway. */
+    public boolean isPonderingUseful() {
+        return !(board.isClassic()
+                && (difficulty == AIPlayer.Difficulty.EASY || difficulty == AIPlayer.Difficulty.HARD));
+    }
+
+    /**
+     * The AI's move in the given position (AI to move). Answers at once if the position
+     * is one pondered on, else searches it with the usual budget, or until cancelled.
+     */
+    public Move replyTo(Board position, BooleanSupplier cancelled) {
+        int humanMove = humanMoveSincePonder(position);
+        int answer = (humanMove >= 0) ? ponderedAnswer[humanMove] : -1;
+        java.util.Arrays.fill(ponderedAnswer, -1);  // pondered answers are for this turn only
+        if (answer >= 0) {
+            ponderHits++;
+            return new Move(answer / board.getCols(), answer % board.getCols());
+        }
+        ponderMisses++;
+        board.copyFrom(position);
+        ai.setCancelSignal(cancelled);
+        return ai.getAIMove();
+    }
+
+    /**
+     * Search answers to the human's likely replies in the given position (human to move),
+     * until every candidate is done or stopped says so.
+     */
+    public void ponder(Board position, BooleanSupplier stopped) {
+        board.copyFrom(position);
+        System.arraycopy(board.crossBits, 0, baseCross, 0, baseCross.length);
+        System.arraycopy(board.noughtBits, 0, baseNought, 0, baseNought.length);
+        java.util.Arrays.fill(ponderedAnswer, -1);
+        ai.setCancelSignal(stopped);
+        opponentModel.setCancelSignal(stopped);
+        if (!isPonderingUseful() || board.isFull()) return;
+
+        // Most likely reply first: the one a shallow search picks for the human
+        Move predicted = opponentModel.getAIMove();
+        int count = opponentModel.candidateMoves(candidates);
+        int first = (predicted.row < 0) ? -1 : board.indexOf(predicted.row, predicted.col);
+        for (int i = -1, pondered = 0; i < count && pondered < MAX_PONDER_REPLIES; i++) {
+            int humanMove = (i < 0) ? first : candidates[i];
+            if (humanMove < 0 || (i >= 0 && humanMove == first)) continue;
+            if (stopped.getAsBoolean()) return;
+            board.place(humanSeed, humanMove);
+            if (!board.isWinningMove(humanSeed, humanMove) && !board.isFull()) {
+                Move answer = ai.getAIMove();
+                if (!stopped.getAsBoolean()) {
+                    ponderedAnswer[humanMove] = board.indexOf(answer.row, answer.col);
+                }
+            }
+            board.clear(humanMove);
+            pondered++;
+        }
+    }
+
+    /** Cell of the single human move that turns the pondered position into position, or -1 */
+    private int humanMoveSincePonder(Board position) {
+        int move = -1;
+        long[] humanBase = (humanSeed == Seed.CROSS) ? baseCross : baseNought;
+        long[] aiBase = (aiSeed == Seed.CROSS) ? baseCross : baseNought;
+        long[] humanNow = position.bitsOf(humanSeed);
+        long[] aiNow = position.bitsOf(aiSeed);
+        for (int word = 0; word < humanBase.length; word++) {
+            long added = humanNow[word] & ~humanBase[word];
+            if (aiNow[word] != aiBase[word] || (humanBase[word] & ~humanNow[word]) != 0
+                    || Long.bitCount(added) > 1 || (added != 0 && move >= 0)) {
+                return -1;
+            }
+            if (added != 0) {
+                move = (word << 6) + Long.numberOfTrailingZeros(added);
+            }
+        }
+        return move;
+    }
+
+    /** Human moves answered from pondering, and moves that needed a fresh search */
+    public long getPonderHits() {
+        return ponderHits;
+    }
+
+    public long getPonderMisses() {
+        return ponderMisses;
+    }
+
+    /** The AIPlayer playing the AI's side, for its search statistics */
+    public AIPlayer getAIPlayer() {
+        return ai;
+    }
+}
@@ -0,0 +1,166 @@
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A read-through cache: get() returns the cached value of a key, or loads it with the
+ * loader and keeps it. At most maxEntries are kept, the least recently used going
+ * first, and a value older than ttlMillis is loaded again.
+ *
+ * Loads run on the calling thread, outside the cache's lock; callers asking for a key
+ * already being loaded wait for that load instead of starting another. A value whose
+ * load began before an invalidate() of its key is returned but not kept, so a stale
+ * value never outlives the invalidation.
+ *
+ * Hits, misses, evictions and the load times are counted for stats().
+ */
+public class ReadThroughCache<K, V> {
+    /** Loads the value of a key, e.g. with a database query */
+    public interface Loader<K, V> {
+        V load(K key) throws Exception;
+    }
+
+    private static final class Entry<V> {
+        final V value;
+        final long loadedMillis;
+
+        Entry(V value, long loadedMillis) {
+            this.value = value;
+            this.loadedMillis = loadedMillis;
+        }
+    }
+
+    /** A load in progress, which other callers of the same key wait for */
+    private static final class Load<V> {
+        final CountDownLatch done = new CountDownLatch(1);
+        V value;
+        Exception failure;
+    }
+
+    private final Loader<K, V> loader;
+    private final int maxEntries;
+    private final long ttlMillis;
+    /** The values, in access order; guarded by this */
+    private final LinkedHashMap<K, Entry<V>> entries;
+    private final ConcurrentHashMap<K, Load<V>> loads = new ConcurrentHashMap<>();
+    /** Invalidations so far; the last one of some keys, and the last invalidateAll(); guarded by this */
+    private long invalidations;
+    private final Map<K, Long> invalidatedAt = new HashMap<>();
+    private long allInvalidatedAt;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    /** Time to load a value; recorded under the lock, so by one thread at a time */
+    private final LatencyHistogram loadTime = new LatencyHistogram();
+
+    public ReadThroughCache(Loader<K, V> loader, int maxEntries, long ttlMillis) {
+        this.loader = loader;
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() <= ReadThroughCache.this.maxEntries) return false;
+                evictions.incrementAndGet();
+                return true;
+            }
+        };
+    }
+
+    /** The value of the key, loaded if it is not cached or has expired */
+    public V get(K key) throws Exception {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null) {
+                if (now - entry.loadedMillis < ttlMillis) {
+                    hits.incrementAndGet();
+                    return entry.value;
+                }
+                entries.remove(key);
+                evictions.incrementAndGet();
+            }
+        }
+        misses.incrementAndGet();
+
+        Load<V> load = new Load<>();
+        Load<V> running = loads.putIfAbsent(key, load);
+        if (running != null) {
+            running.done.await();
+            if (running.failure != null) throw running.failure;
+            return running.value;
+        }
+        long stamp;
+        synchronized (this) {
+            stamp = invalidations;
+        }
+        long start = System.nanoTime();
+        try {
+            load.value = loader.load(key);
+            synchronized (this) {
+                loadTime.record(System.nanoTime() - start);
+                Long invalidated = invalidatedAt.get(key);
+                if ((invalidated == null || invalidated <= stamp) && allInvalidatedAt <= stamp) {
+                    entries.put(key, new Entry<>(load.value, now));
+                }
+            }
+            return load.value;
+        } catch (Exception e) {
+            load.failure = e;
+            throw e;
+        } finally {
+            loads.remove(key);
+            load.done.countDown();
+        }
+    }
+
+    /** Forget the key's value, and any value of it still being loaded */
+    public synchronized void invalidate(K key) {
+        entries.remove(key);
+        invalidatedAt.put(key, ++invalidations);
+        if (invalidatedAt.size() > 4 * maxEntries) {
+            forgetOldInvalidations();
+        }
+    }
+
+    /** Forget every value */
+    public synchronized void invalidateAll() {
+        entries.clear();
+        invalidatedAt.clear();
+        allInvalidatedAt = ++invalidations;
+    }
+
+    /** Drop the invalidations no load in progress can have begun before */
+    private void forgetOldInvalidations() {
+        for (Iterator<Map.Entry<K, Long>> i = invalidatedAt.entrySet().iterator(); i.hasNext(); ) {
+            if (!loads.containsKey(i.next().getKey())) i.remove();
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /** Fraction of get() calls answered from the cache */
+    public double hitRate() {
+        long hit = hits.get(), total = hit + misses.get();
+        return (total == 0) ? 0 : hit / (double) total;
+    }
+
+    /** Load time in microseconds below which the given fraction of the loads took */
+    public long loadPercentile(double fraction) {
+        return loadTime.percentile(fraction);
+    }
+
+    /** One line of counters and load times, for the logs */
+    public String stats() {
+        return String.format("%d entries, hit rate %.1f%% (%,d hits, %,d misses), %,d evicted, load us p50 %,d p99 %,d",
+                size(), 100 * hitRate(), hits.get(), misses.get(), evictions.get(), loadTime.percentile(0.5),
+                loadTime.percentile(0.99));
+    }
+}
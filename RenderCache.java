@@ -0,0 +1,145 @@
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+
+/**
+ * Pre-rendered layers of the game page, so a frame only copies images instead of
+ * scaling them. The static layer (the background scaled to the panel, with the grid
+ * on top) is kept in a VolatileImage, and the seed sprites are kept scaled to the
+ * cell size. Both are drawn at device resolution, so they stay sharp on HiDPI
+ * screens, and are rebuilt only when the panel size, the board or the screen scale
+ * changes, or when the VolatileImage loses its contents. Seed images still loading are
+ * left out of the sprites (Cell draws a placeholder), and the sprites are made again
+ * once they have arrived.
+ *
+ * Used on the EDT only.
+ */
+public class RenderCache {
+    private Image background;
+    private BoardView boardView;
+    private int width, height;
+    private double scaleX, scaleY;
+    private Color fill;
+    /** False when the layers must be redrawn at the next frame */
+    private boolean valid;
+
+    private VolatileImage staticLayer;
+    /** The static layer when no VolatileImage can be made, e.g. while not displayable */
+    private BufferedImage staticFallback;
+    private Image crossSprite, noughtSprite;
+    /** Were both seed images loaded when the sprites were made? */
+    private boolean spritesComplete;
+
+    /** The background image, or null while it is still loading */
+    public void setBackground(Image background) {
+        if (this.background != background) {
+            this.background = background;
+            valid = false;
+        }
+    }
+
+    /**
+     * Paint the page: the static layer over the whole component, then the seeds of the
+     * board, centred horizontally like the grid
+     */
+    public void paint(Graphics2D g, Component component, BoardView view) {
+        AffineTransform transform = g.getTransform();
+        boolean stale = !valid || view != boardView || width != component.getWidth()
+                || height != component.getHeight()
+                || scaleX != transform.getScaleX() || scaleY != transform.getScaleY()
+                || (!spritesComplete && seedImagesLoaded());
+        if (stale) {
+            boardView = view;
+            width = component.getWidth();
+            height = component.getHeight();
+            scaleX = transform.getScaleX();
+            scaleY = transform.getScaleY();
+            fill = component.getBackground();
+            rebuildSprites(component.getGraphicsConfiguration());
+            valid = true;
+        }
+        paintStaticLayer(g, component.getGraphicsConfiguration(), stale);
+
+        int xOffset = (width - view.getCanvasWidth()) / 2;
+        g.translate(xOffset, 0);
+        view.paintCells(g, crossSprite, noughtSprite);
+        g.translate(-xOffset, 0);
+    }
+
+    /** Copy the static layer to g, first redrawing it if it is stale or was lost */
+    private void paintStaticLayer(Graphics2D g, GraphicsConfiguration gc, boolean stale) {
+        int deviceWidth = deviceSize(width, scaleX);
+        int deviceHeight = deviceSize(height, scaleY);
+        if (gc == null) {
+            if (stale || staticFallback == null) {
+                staticFallback = new BufferedImage(deviceWidth, deviceHeight, BufferedImage.TYPE_INT_RGB);
+                renderStaticLayer(staticFallback.createGraphics());
+            }
+            g.drawImage(staticFallback, 0, 0, width, height, null);
+            return;
+        }
+        staticFallback = null;
+        do {
+            int status = (staticLayer == null || staticLayer.getWidth() != deviceWidth
+                    || staticLayer.getHeight() != deviceHeight)
+                    ? VolatileImage.IMAGE_INCOMPATIBLE : staticLayer.validate(gc);
+            if (status == VolatileImage.IMAGE_INCOMPATIBLE) {
+                if (staticLayer != null) staticLayer.flush();
+                staticLayer = gc.createCompatibleVolatileImage(deviceWidth, deviceHeight);
+                status = VolatileImage.IMAGE_RESTORED;
+            }
+            if (status == VolatileImage.IMAGE_RESTORED || stale) {
+                renderStaticLayer(staticLayer.createGraphics());
+                stale = false;
+            }
+            g.drawImage(staticLayer, 0, 0, width, height, null);
+        } while (staticLayer.contentsLost());
+    }
+
+    /** Draw the background and the grid at device resolution, then dispose of g */
+    private void renderStaticLayer(Graphics2D g) {
+        g.scale(scaleX, scaleY);
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g.setColor(fill);
+        g.fillRect(0, 0, width, height);
+        if (background != null) {
+            g.drawImage(background, 0, 0, width, height, null);
+        }
+        g.translate((width - boardView.getCanvasWidth()) / 2, 0);
+        boardView.paintGrid(g);
+        g.dispose();
+    }
+
+    /** Scale the seed images to the cell's seed size, once per layout */
+    private void rebuildSprites(GraphicsConfiguration gc) {
+        int seedSize = Cell.getSeedSize(boardView.getCellSize());
+        spritesComplete = seedImagesLoaded();
+        crossSprite = scaled(Assets.imageIfLoaded(Assets.CROSS_IMAGE), seedSize, gc);
+        noughtSprite = scaled(Assets.imageIfLoaded(Assets.NOUGHT_IMAGE), seedSize, gc);
+    }
+
+    private static boolean seedImagesLoaded() {
+        return Assets.imageIfLoaded(Assets.CROSS_IMAGE) != null && Assets.imageIfLoaded(Assets.NOUGHT_IMAGE) != null;
+    }
+
+    private Image scaled(Image source, int size, GraphicsConfiguration gc) {
+        if (source == null) return null;
+        int deviceWidth = deviceSize(size, scaleX);
+        int deviceHeight = deviceSize(size, scaleY);
+        BufferedImage sprite = (gc != null)
+                ? gc.createCompatibleImage(deviceWidth, deviceHeight, Transparency.TRANSLUCENT)
+                : new BufferedImage(deviceWidth, deviceHeight, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = sprite.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g.drawImage(source, 0, 0, deviceWidth, deviceHeight, null);
+        g.dispose();
+        return sprite;
+    }
+
+    private static int deviceSize(int size, double scale) {
+        return Math.max(1, (int) Math.ceil(size * scale));
+    }
+}
@@ -0,0 +1,373 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Results of finished games, stored in the game_results table of a JDBC database.
+ *
+ * Writes are write-behind: offer() only puts the result on a bounded queue, and a
+ * background thread takes whatever is queued, up to MAX_BATCH results, and inserts it
+ * as one JDBC batch of a prepared statement in one transaction. So finishing a game
+ * never waits for the database. When the queue is full, offer() refuses the result at
+ * once (the caller counts or logs it), and offer() with a timeout waits for room; that
+ * is the backpressure when the database falls behind. A batch that fails is retried,
+ * with growing pauses, until it is written or the repository is closed. Listeners
+ * added with addFlushListener() see every batch once it is committed.
+ *
+ * close() stops offer() taking results; the flusher writes what is queued and then
+ * stops. An offer() racing with close() either gets its result in before the flusher
+ * stops (the flusher waits for the offers in progress) or counts it as dropped, so every
+ * result offered is written or counted. Close the pool only once isTerminated().
+ *
+ * The table is created at the first write if it is missing. Check the repository
+ * against an embedded H2 database with: java ResultsRepository check (mvn test does).
+ */
+public class ResultsRepository implements AutoCloseable {
+    private static final int MAX_BATCH = 500;
+    /** Longest wait for a connection, and the first pause after a failed batch */
+    private static final long RETRY_MILLIS = 1000;
+    private static final long MAX_RETRY_MILLIS = 30_000;
+    /** Attempts per batch once the repository is closing */
+    private static final int ATTEMPTS_WHEN_CLOSING = 3;
+
+    static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS game_results ("
+            + "player VARCHAR(64) NOT NULL, "
+            + "difficulty VARCHAR(8), "           // null between two humans
+            + "human_seed CHAR(1) NOT NULL, "
+            + "board_rows INT NOT NULL, board_cols INT NOT NULL, win_length INT NOT NULL, "
+            + "outcome VARCHAR(10) NOT NULL, "
+            + "moves INT NOT NULL, "
+            + "finished_at BIGINT NOT NULL)";     // milliseconds since the epoch
+    private static final String INSERT = "INSERT INTO game_results (player, difficulty, human_seed, "
+            + "board_rows, board_cols, win_length, outcome, moves, finished_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    /** A finished game, from the point of view of its (first) human player */
+    public static final class GameResult {
+        public final String player;
+        /** The AI's level, or null between two humans */
+        public final AIPlayer.Difficulty difficulty;
+        public final Seed humanSeed;
+        public final int rows, cols, winLength;
+        public final State outcome;
+        public final int moves;
+        public final long finishedMillis;
+
+        public GameResult(String player, AIPlayer.Difficulty difficulty, Seed humanSeed, int rows, int cols,
+                          int winLength, State outcome, int moves, long finishedMillis) {
+            this.player = player;
+            this.difficulty = difficulty;
+            this.humanSeed = humanSeed;
+            this.rows = rows;
+            this.cols = cols;
+            this.winLength = winLength;
+            this.outcome = outcome;
+            this.moves = moves;
+            this.finishedMillis = finishedMillis;
+        }
+
+        /** The result of a game just finished on the given board */
+        public GameResult(String player, AIPlayer.Difficulty difficulty, Seed humanSeed, Board board,
+                          State outcome) {
+            this(player, difficulty, humanSeed, board.getRows(), board.getCols(), board.getWinLength(), outcome,
+                    board.moveCount, System.currentTimeMillis());
+        }
+
+        /** Did the human player win? */
+        public boolean isWin() {
+            return outcome == (humanSeed == Seed.CROSS ? State.CROSS_WON : State.NOUGHT_WON);
+        }
+    }
+
+    private final ConnectionPool pool;
+    private final BlockingQueue<GameResult> queue;
+    private final Thread flusher;
+    private final CountDownLatch flusherDone = new CountDownLatch(1);
+    private final List<Consumer<List<GameResult>>> flushListeners = new CopyOnWriteArrayList<>();
+    private volatile boolean closing;
+    /** offer() calls in progress; the flusher does not stop while there are any */
+    private final AtomicInteger offering = new AtomicInteger();
+    private boolean tableChecked;
+
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private final AtomicLong lost = new AtomicLong();
+    /** Time to write a batch, recorded by the flusher */
+    private final LatencyHistogram batchTime = new LatencyHistogram();
+
+    /** A repository writing through the pool, holding up to queueCapacity results not yet written */
+    public ResultsRepository(ConnectionPool pool, int queueCapacity) {
+        this.pool = pool;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        flusher = new Thread(this::flushUntilClosed, "results-flush");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /** Call listener on the flusher thread with every batch of results once it is in the database; it must not keep the list */
+    public void addFlushListener(Consumer<List<GameResult>> listener) {
+        flushListeners.add(listener);
+    }
+
+    /** Queue a result without waiting; false if the queue is full (or closed) and it was dropped */
+    public boolean offer(GameResult result) {
+        offering.incrementAndGet();
+        try {
+            if (!closing && queue.offer(result)) return true;
+        } finally {
+            offering.decrementAndGet();
+        }
+        rejected.incrementAndGet();
+        return false;
+    }
+
+    /** Queue a result, waiting up to the timeout for room; false if it was dropped */
+    public boolean offer(GameResult result, long timeout, TimeUnit unit) throws InterruptedException {
+        offering.incrementAndGet();
+        try {
+            if (!closing && queue.offer(result, timeout, unit)) return true;
+        } finally {
+            offering.decrementAndGet();
+        }
+        rejected.incrementAndGet();
+        return false;
+    }
+
+    private void flushUntilClosed() {
+        List<GameResult> batch = new ArrayList<>(MAX_BATCH);
+        try {
+            // An offer() that saw closing false may still be adding to the queue
+            while (!closing || offering.get() > 0 || !queue.isEmpty()) {
+                GameResult first = queue.poll(RETRY_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH - 1);
+                writeWithRetries(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            closing = true;
+            lost.addAndGet(batch.size());
+            while (offering.get() > 0 || !queue.isEmpty()) {
+                batch.clear();
+                lost.addAndGet(queue.drainTo(batch));
+                Thread.onSpinWait();
+            }
+        } finally {
+            flusherDone.countDown();
+        }
+    }
+
+    private void writeWithRetries(List<GameResult> batch) throws InterruptedException {
+        long pause = RETRY_MILLIS;
+        int attemptsWhenClosing = 0;
+        while (true) {
+            long start = System.nanoTime();
+            try {
+                write(batch);
+                batchTime.record(System.nanoTime() - start);
+                for (Consumer<List<GameResult>> listener : flushListeners) {
+                    try {
+                        listener.accept(batch);
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                }
+                batches.incrementAndGet();
+                written.addAndGet(batch.size());  // after the listeners, so getWritten() includes them
+                return;
+            } catch (SQLException e) {
+                failedBatches.incrementAndGet();
+                System.err.println("Writing " + batch.size() + " game results failed: " + e);
+            }
+            if (closing && ++attemptsWhenClosing >= ATTEMPTS_WHEN_CLOSING) {
+                lost.addAndGet(batch.size());
+                return;
+            }
+            Thread.sleep(pause);
+            pause = Math.min(2 * pause, MAX_RETRY_MILLIS);
+        }
+    }
+
+    /** Insert the batch in one transaction */
+    private void write(List<GameResult> batch) throws SQLException {
+        try (ConnectionPool.Lease lease = pool.borrow(RETRY_MILLIS)) {
+            try {
+                Connection connection = lease.connection();
+                if (!tableChecked) {
+                    try (Statement statement = connection.createStatement()) {
+                        statement.execute(CREATE_TABLE);
+                    }
+                    tableChecked = true;
+                }
+                connection.setAutoCommit(false);
+                PreparedStatement insert = lease.prepare(INSERT);
+                for (GameResult result : batch) {
+                    insert.setString(1, result.player);
+                    insert.setString(2, (result.difficulty == null) ? null : result.difficulty.name());
+                    insert.setString(3, (result.humanSeed == Seed.CROSS) ? "X" : "O");
+                    insert.setInt(4, result.rows);
+                    insert.setInt(5, result.cols);
+                    insert.setInt(6, result.winLength);
+                    insert.setString(7, result.outcome.name());
+                    insert.setInt(8, result.moves);
+                    insert.setLong(9, result.finishedMillis);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+                connection.commit();
+            } catch (SQLException e) {
+                lease.discard();
+                throw e;
+            }
+        }
+    }
+
+    /** Results written to the database so far */
+    public long getWritten() {
+        return written.get();
+    }
+
+    /** Results dropped because the queue was full, or dropped by close() because the database failed */
+    public long getDropped() {
+        return rejected.get() + lost.get();
+    }
+
+    /** Results queued and not yet written */
+    public int getQueued() {
+        return queue.size();
+    }
+
+    /** One line of counters and batch write times, for the logs */
+    public String stats() {
+        return String.format("%,d results written in %,d batches (%,d failed), %,d queued, %,d dropped, "
+                        + "batch time us p50 %,d p99 %,d max %,d", written.get(), batches.get(),
+                failedBatches.get(), queue.size(), getDropped(), batchTime.percentile(0.5),
+                batchTime.percentile(0.99), batchTime.percentile(1));
+    }
+
+    /**
+     * Stop taking results and wait for the queued ones to be written (or given up on).
+     * If interrupted meanwhile, return at once with the interrupt flag set; the flusher
+     * still writes what is queued in the background, and isTerminated() is false until
+     * it is done.
+     */
+    @Override
+    public void close() {
+        closing = true;
+        try {
+            flusherDone.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Has the flusher stopped, after close()? Only then may the pool be closed */
+    public boolean isTerminated() {
+        return flusherDone.getCount() == 0;
+    }
+
+    /**
+     * Check against an in-memory H2 database (on the test classpath): several threads
+     * offer results, some with timeouts, while the flusher writes them; after close()
+     * every result must be in the table or counted as dropped. Once with close() after
+     * the offers, and once with close() racing with them.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1 || !args[0].equals("check")) {
+            System.err.println("Usage: java ResultsRepository check");
+            System.exit(2);
+        }
+        Class.forName("org.h2.Driver");  // registered with this class loader, as mvn runs each check in its own
+        ConnectionPool pool = new ConnectionPool("jdbc:h2:mem:results-check;DB_CLOSE_DELAY=-1", "sa", "", 4);
+        int failures = check(pool, 4, 25_000, -1) + check(pool, 4, 25_000, 20);
+        pool.close();
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Offer perThread results from each of the threads, the first waiting for room, and
+     * close the repository when they are done, or closeAfterMillis into the offers if
+     * that is not negative; 1 if a result is neither in the table nor counted as dropped
+     */
+    private static int check(ConnectionPool pool, int threads, int perThread, long closeAfterMillis)
+            throws Exception {
+        long rowsBefore = rowCount(pool);
+        ResultsRepository results = new ResultsRepository(pool, 1024);
+        AIPlayer.Difficulty[] levels = AIPlayer.Difficulty.values();
+        long start = System.nanoTime();
+        List<Thread> producers = new ArrayList<>();
+        AtomicLong offerNanos = new AtomicLong();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            producers.add(new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    GameResult result = new GameResult("player" + (i % 50), levels[i % levels.length],
+                            (i % 2 == 0) ? Seed.CROSS : Seed.NOUGHT, 3, 3, 3, State.values()[i % 4], 5 + i % 5,
+                            System.currentTimeMillis());
+                    if (thread == 0) {
+                        try {
+                            results.offer(result, 10, TimeUnit.SECONDS);  // waits: all of these get in, unless closed
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    } else {
+                        long before = System.nanoTime();
+                        results.offer(result);
+                        offerNanos.addAndGet(System.nanoTime() - before);
+                    }
+                }
+            }));
+        }
+        producers.forEach(Thread::start);
+        if (closeAfterMillis >= 0) {
+            Thread.sleep(closeAfterMillis);
+            results.close();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        results.close();
+        long elapsed = System.nanoTime() - start;
+
+        long rows = rowCount(pool) - rowsBefore;
+        long offered = (long) threads * perThread;
+        System.out.println("ResultsRepository: " + results.stats());
+        if (rows != results.getWritten() || results.getWritten() + results.getDropped() != offered
+                || (closeAfterMillis < 0 && results.getWritten() < perThread)) {
+            System.err.println("ResultsRepository: " + rows + " rows in the table, " + offered + " offered");
+            return 1;
+        }
+        System.out.printf("ResultsRepository: %,d of %,d results in the table in %.0f ms%s, offer() without waiting "
+                + "%.0f ns on average%n", rows, offered, elapsed / 1e6,
+                (closeAfterMillis < 0) ? "" : " (closed after " + closeAfterMillis + " ms)",
+                offerNanos.get() / (double) (offered - perThread));
+        return 0;
+    }
+
+    private static long rowCount(ConnectionPool pool) throws SQLException {
+        try (ConnectionPool.Lease lease = pool.borrow(1000);
+             Statement statement = lease.connection().createStatement()) {
+            statement.execute(CREATE_TABLE);
+            try (ResultSet count = statement.executeQuery("SELECT COUNT(*) FROM game_results")) {
+                count.next();
+                return count.getLong(1);
+            }
+        }
+    }
+}
@@ -1,50 +1,29 @@
-import java.awt.Image;
-import java.net.URL;
-import javax.swing.ImageIcon;
 /**
  * This enum is used by:
  * 1. Player: takes value of CROSS or NOUGHT
  * 2. Cell content: takes value of CROSS, NOUGHT, or NO_SEED.
  *
- * We also attach a display image icon (text or image) for the items.
- *   and define the related variable/constructor/getter.
- * To draw the image:
- *   g.drawImage(content.getImage(), x, y, width, height, null);
+ * We also attach a display name for the items. The images are the view's
+ * business (see Cell), so the engine can load this class without AWT.
  *
  * Ideally, we should define two enums with inheritance, which is,
  *  however, not supported.
  */
 public enum Seed {   // to save as "Seed.java"
-    CROSS("images/IMAGE X", "images/IMAGE O.png"),   // displayName, imageFilename
-    NOUGHT("images/IMAGE O", "images/IMAGE X.png"),
-    NO_SEED(" ", null);
+    CROSS("images/IMAGE X"),   // displayName
+    NOUGHT("images/IMAGE O"),
+    NO_SEED(" ");
 
     // Private variables
     private String displayName;
-    private Image img = null;
 
     // Constructor (must be private)
-    private Seed(String name, String imageFilename) {
+    private Seed(String name) {
         this.displayName = name;
-
-        if (imageFilename != null) {
-            URL imgURL = getClass().getClassLoader().getResource(imageFilename);
-            ImageIcon icon = null;
-            if (imgURL != null) {
-                icon = new ImageIcon(imgURL);
-                //System.out.println(icon);  // debugging
-            } else {
-                System.err.println("Couldn't find file " + imageFilename);
-            }
-            img = icon.getImage();
-        }
     }
 
     // Public getters
     public String getDisplayName() {
         return displayName;
     }
-    public Image getImage() {
-        return img;
-    }
 }
@@ -0,0 +1,355 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongConsumer;
+
+/**
+ * Live games of one board size, packed into long arrays rather than held as objects:
+ * a game is a slot of a header word, with its state and settings, followed by the two
+ * bitboards. On boards of up to INLINE_CELLS cells (3x3 and 4x4) the bitboards fit in
+ * the header itself, so a classic game takes 8 bytes, and ten million of them 80 MB,
+ * which the garbage collector never has to trace.
+ *
+ * A game is named by a handle, its slot and the slot's generation. Removing a game
+ * bumps the generation and puts the slot on a free list, so the slot is reused and a
+ * stale handle is recognised (isLive() is false).
+ *
+ * Slots are guarded by striped locks: hold lockOf(handle) around every call taking a
+ * handle. The arrays grow a chunk of CHUNK_SLOTS slots at a time, up to the capacity.
+ */
+public class SessionStore {
+    /** Boards with at most this many cells keep their bitboards in the header word */
+    public static final int INLINE_CELLS = 20;
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SLOTS = 1 << CHUNK_BITS;
+    private static final int STRIPES = 1024;
+
+    // Header word: state, in use, human side, AI to move, difficulty, generation, then the
+    // inline bitboards; a free slot keeps its generation and links to the next free slot
+    private static final int STATE_SHIFT = 0;         // 2 bits, State ordinal
+    private static final long IN_USE = 1L << 2;
+    private static final long HUMAN_NOUGHT = 1L << 3;
+    private static final long AI_TO_MOVE = 1L << 4;
+    private static final int DIFFICULTY_SHIFT = 5;    // 2 bits, Difficulty ordinal
+    private static final int GENERATION_SHIFT = 8;    // 16 bits
+    private static final long GENERATION_MASK = 0xFFFFL;
+    private static final int CROSS_SHIFT = 24;        // INLINE_CELLS bits each
+    private static final int NOUGHT_SHIFT = CROSS_SHIFT + INLINE_CELLS;
+    private static final long INLINE_MASK = (1L << INLINE_CELLS) - 1;
+    private static final int NEXT_FREE_SHIFT = 32;    // slot + 1 of the next free slot, in a free header
+
+    private static final State[] STATES = State.values();
+    private static final AIPlayer.Difficulty[] DIFFICULTIES = AIPlayer.Difficulty.values();
+
+    /** An empty board of this size, of which newBoard() makes copies */
+    private final Board shape;
+    private final int capacity;
+    private final boolean inline;
+    /** Bitboard words of a board, and words of a slot */
+    private final int boardWords, slotWords;
+    private final long[][] chunks;
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+
+    /** Slots handed out so far, and the free list (slot + 1, 0 if empty), guarded by this */
+    private int top;
+    private int freeHead;
+    private final AtomicInteger size = new AtomicInteger();
+
+    /** A store of up to capacity games on a rows-by-cols board with winLength in a row to win */
+    public SessionStore(int rows, int cols, int winLength, int capacity) {
+        shape = new Board(rows, cols, winLength);  // validates the size
+        this.capacity = capacity;
+        inline = shape.getCellCount() <= INLINE_CELLS;
+        boardWords = shape.wordCount();
+        slotWords = inline ? 1 : 1 + 2 * boardWords;
+        chunks = new long[(capacity + CHUNK_SLOTS - 1) >>> CHUNK_BITS][];
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /** A new empty board of this store's size, to load games into; cheap enough for every request */
+    public Board newBoard() {
+        return shape.newEmptyBoard();
+    }
+
+    /** Number of live games */
+    public int size() {
+        return size.get();
+    }
+
+    /** Bytes of array used per game */
+    public int bytesPerGame() {
+        return slotWords * Long.BYTES;
+    }
+
+    /** Lock to hold around every call taking the handle */
+    public ReentrantLock lockOf(long handle) {
+        return locks[(int) handle & (STRIPES - 1)];
+    }
+
+    /**
+     * Add a game with an empty board, returning its handle, or -1 if the store is full.
+     * The AI is to move if it plays CROSS (the human plays NOUGHT).
+     */
+    public long create(AIPlayer.Difficulty difficulty, Seed humanSeed) {
+        int slot = allocate();
+        if (slot < 0) return -1;
+        ReentrantLock lock = locks[slot & (STRIPES - 1)];
+        lock.lock();
+        try {
+            long[] chunk = chunks[slot >>> CHUNK_BITS];
+            int at = (slot & (CHUNK_SLOTS - 1)) * slotWords;
+            long generation = (chunk[at] >>> GENERATION_SHIFT) & GENERATION_MASK;
+            long header = IN_USE | (generation << GENERATION_SHIFT)
+                    | ((long) difficulty.ordinal() << DIFFICULTY_SHIFT)
+                    | ((long) State.PLAYING.ordinal() << STATE_SHIFT);
+            if (humanSeed == Seed.NOUGHT) header |= HUMAN_NOUGHT | AI_TO_MOVE;
+            chunk[at] = header;
+            for (int i = 1; i < slotWords; i++) {
+                chunk[at + i] = 0;
+            }
+            size.incrementAndGet();
+            return (generation << 32) | slot;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Remove the game, if it is still live; its slot will be reused */
+    public boolean remove(long handle) {
+        int slot = (int) handle;
+        if (!isLive(handle)) return false;
+        long[] chunk = chunks[slot >>> CHUNK_BITS];
+        int at = (slot & (CHUNK_SLOTS - 1)) * slotWords;
+        long generation = ((handle >>> 32) + 1) & GENERATION_MASK;
+        chunk[at] = generation << GENERATION_SHIFT;
+        size.decrementAndGet();
+        release(slot);
+        return true;
+    }
+
+    /**
+     * Put a game back at its handle, e.g. from a journal after a restart, in place of any
+     * game its slot holds. Restore every game before the first create(), then call
+     * finishRestore().
+     */
+    public void restore(long handle, AIPlayer.Difficulty difficulty, Seed humanSeed, Board board, State state) {
+        int slot = reserve(handle);
+        long[] chunk = chunks[slot >>> CHUNK_BITS];
+        int at = (slot & (CHUNK_SLOTS - 1)) * slotWords;
+        if ((chunk[at] & IN_USE) == 0) size.incrementAndGet();
+        chunk[at] = IN_USE | ((handle >>> 32) << GENERATION_SHIFT) | ((long) difficulty.ordinal() << DIFFICULTY_SHIFT);
+        if (humanSeed == Seed.NOUGHT) chunk[at] |= HUMAN_NOUGHT;
+        save(handle, board, state, false);
+    }
+
+    /**
+     * While restoring: the handle's game was removed, so drop it if it was restored, and
+     * do not let its slot reuse the handle
+     */
+    public void retire(long handle) {
+        int slot = reserve(handle);
+        long[] chunk = chunks[slot >>> CHUNK_BITS];
+        int at = (slot & (CHUNK_SLOTS - 1)) * slotWords;
+        long generation = Math.max((chunk[at] >>> GENERATION_SHIFT) & GENERATION_MASK,
+                ((handle >>> 32) + 1) & GENERATION_MASK);
+        if (isLive(handle)) {
+            chunk[at] = generation << GENERATION_SHIFT;
+            size.decrementAndGet();
+        } else if ((chunk[at] & IN_USE) == 0) {
+            chunk[at] = generation << GENERATION_SHIFT;
+        }
+    }
+
+    /**
+     * Call action with a handle for every slot handed out so far: its game's, if it holds
+     * one (isLive() is true), else that of the last game it held, if any. Takes no locks:
+     * for a snapshot while no other thread uses the store.
+     */
+    public void forEachSlot(LongConsumer action) {
+        int slots;
+        synchronized (this) {
+            slots = top;
+        }
+        for (int slot = 0; slot < slots; slot++) {
+            long header = chunks[slot >>> CHUNK_BITS][(slot & (CHUNK_SLOTS - 1)) * slotWords];
+            long generation = (header >>> GENERATION_SHIFT) & GENERATION_MASK;
+            if ((header & IN_USE) != 0) {
+                action.accept(generation << 32 | slot);
+            } else if (generation > 0) {
+                action.accept((generation - 1) << 32 | slot);
+            }
+        }
+    }
+
+    /** After restoring: put the slots below the highest restored one that hold no game on the free list */
+    public synchronized void finishRestore() {
+        for (int slot = top - 1; slot >= 0; slot--) {
+            if ((chunks[slot >>> CHUNK_BITS][(slot & (CHUNK_SLOTS - 1)) * slotWords] & IN_USE) == 0) {
+                release(slot);
+            }
+        }
+    }
+
+    /** Make the handle's slot exist, as if every slot up to it had been handed out */
+    private synchronized int reserve(long handle) {
+        int slot = (int) handle;
+        if (slot < 0 || slot >= capacity) {
+            throw new IllegalArgumentException("Slot " + slot + " outside the store");
+        }
+        for (int chunk = top >>> CHUNK_BITS; chunk <= slot >>> CHUNK_BITS; chunk++) {
+            if (chunks[chunk] == null) {
+                int slots = Math.min(CHUNK_SLOTS, capacity - (chunk << CHUNK_BITS));
+                chunks[chunk] = new long[slots * slotWords];
+            }
+        }
+        top = Math.max(top, slot + 1);
+        return slot;
+    }
+
+    /** Is the handle's game still in the store? */
+    public boolean isLive(long handle) {
+        int slot = (int) handle;
+        if (slot < 0 || handle >>> 32 > GENERATION_MASK) return false;
+        long[] chunk = (slot < capacity) ? chunks[slot >>> CHUNK_BITS] : null;
+        if (chunk == null) return false;
+        long header = chunk[(slot & (CHUNK_SLOTS - 1)) * slotWords];
+        return (header & IN_USE) != 0 && ((header >>> GENERATION_SHIFT) & GENERATION_MASK) == handle >>> 32;
+    }
+
+    public State getState(long handle) {
+        return STATES[(int) (header(handle) >>> STATE_SHIFT) & 3];
+    }
+
+    public AIPlayer.Difficulty getDifficulty(long handle) {
+        return DIFFICULTIES[(int) (header(handle) >>> DIFFICULTY_SHIFT) & 3];
+    }
+
+    public Seed getHumanSeed(long handle) {
+        return ((header(handle) & HUMAN_NOUGHT) != 0) ? Seed.NOUGHT : Seed.CROSS;
+    }
+
+    /** Is the AI's reply being searched, so the human may not move? */
+    public boolean isAIToMove(long handle) {
+        return (header(handle) & AI_TO_MOVE) != 0;
+    }
+
+    /** Copy the game's position into board, which must be of this store's size */
+    public void load(long handle, Board board) {
+        long[] chunk = chunks[(int) handle >>> CHUNK_BITS];
+        int at = ((int) handle & (CHUNK_SLOTS - 1)) * slotWords;
+        if (inline) {
+            board.crossBits[0] = (chunk[at] >>> CROSS_SHIFT) & INLINE_MASK;
+            board.noughtBits[0] = (chunk[at] >>> NOUGHT_SHIFT) & INLINE_MASK;
+        } else {
+            System.arraycopy(chunk, at + 1, board.crossBits, 0, boardWords);
+            System.arraycopy(chunk, at + 1 + boardWords, board.noughtBits, 0, boardWords);
+        }
+        int moves = 0;
+        for (int word = 0; word < boardWords; word++) {
+            moves += Long.bitCount(board.crossBits[word]) + Long.bitCount(board.noughtBits[word]);
+        }
+        board.moveCount = moves;
+    }
+
+    /** Store the game's position, its state and whether the AI is to move */
+    public void save(long handle, Board board, State state, boolean aiToMove) {
+        long[] chunk = chunks[(int) handle >>> CHUNK_BITS];
+        int at = ((int) handle & (CHUNK_SLOTS - 1)) * slotWords;
+        long header = chunk[at] & ~(3L << STATE_SHIFT) & ~AI_TO_MOVE;
+        header |= (long) state.ordinal() << STATE_SHIFT;
+        if (aiToMove) header |= AI_TO_MOVE;
+        if (inline) {
+            header &= (1L << CROSS_SHIFT) - 1;
+            header |= (board.crossBits[0] << CROSS_SHIFT) | (board.noughtBits[0] << NOUGHT_SHIFT);
+        } else {
+            System.arraycopy(board.crossBits, 0, chunk, at + 1, boardWords);
+            System.arraycopy(board.noughtBits, 0, chunk, at + 1 + boardWords, boardWords);
+        }
+        chunk[at] = header;
+    }
+
+    /** Set the state (e.g. after a resignation), keeping the position; clears AI to move */
+    public void setState(long handle, State state) {
+        long[] chunk = chunks[(int) handle >>> CHUNK_BITS];
+        int at = ((int) handle & (CHUNK_SLOTS - 1)) * slotWords;
+        chunk[at] = (chunk[at] & ~(3L << STATE_SHIFT) & ~AI_TO_MOVE) | ((long) state.ordinal() << STATE_SHIFT);
+    }
+
+    private long header(long handle) {
+        return chunks[(int) handle >>> CHUNK_BITS][((int) handle & (CHUNK_SLOTS - 1)) * slotWords];
+    }
+
+    /** Take a slot off the free list, or a new one; -1 if the store is full */
+    private synchronized int allocate() {
+        if (freeHead != 0) {
+            int slot = freeHead - 1;
+            long header = chunks[slot >>> CHUNK_BITS][(slot & (CHUNK_SLOTS - 1)) * slotWords];
+            freeHead = (int) (header >>> NEXT_FREE_SHIFT);
+            return slot;
+        }
+        if (top == capacity) return -1;
+        int slot = top++;
+        if (chunks[slot >>> CHUNK_BITS] == null) {
+            int slots = Math.min(CHUNK_SLOTS, capacity - (slot & ~(CHUNK_SLOTS - 1)));
+            chunks[slot >>> CHUNK_BITS] = new long[slots * slotWords];
+        }
+        return slot;
+    }
+
+    /** Put a removed slot on the free list; its header then only holds its generation */
+    private synchronized void release(int slot) {
+        long[] chunk = chunks[slot >>> CHUNK_BITS];
+        int at = (slot & (CHUNK_SLOTS - 1)) * slotWords;
+        chunk[at] |= (long) freeHead << NEXT_FREE_SHIFT;
+        freeHead = slot + 1;
+    }
+
+    /**
+     * Fill a store with random classic games and report the memory they take and the
+     * cost of a load and save. Run with: java SessionStore [games]
+     */
+    public static void main(String[] args) {
+        int games = (args.length > 0) ? Integer.parseInt(args[0]) : 10_000_000;
+        long before = usedHeap();
+        SessionStore store = new SessionStore(3, 3, 3, games);
+        SplittableRandom random = new SplittableRandom(1);
+        Board board = store.newBoard();
+        long start = System.nanoTime();
+        for (int i = 0; i < games; i++) {
+            store.create(AIPlayer.Difficulty.MEDIUM, Seed.CROSS);
+        }
+        long created = System.nanoTime();
+        for (int i = 0; i < games; i++) {
+            long handle = random.nextInt(games);  // slot i of a fresh store, generation 0
+            ReentrantLock lock = store.lockOf(handle);
+            lock.lock();
+            try {
+                store.load(handle, board);
+                State state = State.PLAYING;
+                if (board.emptyCount() > 0 && store.getState(handle) == State.PLAYING) {
+                    int index = Long.numberOfTrailingZeros(board.emptyBits(0));
+                    Seed turn = (board.moveCount % 2 == 0) ? Seed.CROSS : Seed.NOUGHT;
+                    state = board.stepGame(turn, index / 3, index % 3);
+                }
+                store.save(handle, board, state, false);
+            } finally {
+                lock.unlock();
+            }
+        }
+        long updated = System.nanoTime();
+        long after = usedHeap();
+        System.out.printf("%,d games take %,d MB (%d bytes each); create %.0f ns, load+move+save %.0f ns%n",
+                store.size(), (after - before) >> 20, store.bytesPerGame(),
+                (double) (created - start) / games, (double) (updated - created) / games);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -1,16 +1,10 @@
-import java.io.IOException;
-import java.net.URL;
-import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.Clip;
-import javax.sound.sampled.LineUnavailableException;
-import javax.sound.sampled.UnsupportedAudioFileException;
-
 public enum SoundEffect {
     EAT_FOOD("Audio/womp.wav"),
     EXPLODE("Audio/cine 2.wav"),
-    DIE("Audio/patrick.wav"),
-    BACKGROUND("Audio/Background.wav");
+    DIE("Audio/patrick.wav");
+
+    /** Background music, streamed rather than held in memory as a clip */
+    public static final MusicStream MUSIC = new MusicStream("Audio/Background.wav");
 
     /** Nested enumeration for specifying volume */
     public static enum Volume {
@@ -19,46 +13,25 @@ public enum SoundEffect {
 
     public static Volume volume = Volume.LOW;
 
-    /** Each sound effect has its own clip, loaded with its own sound file. */
-    public Clip clip;
+    /** Each sound effect has its own sound file, decoded once into a pool of voices by Assets. */
+    private final String soundFileName;
 
     /** Private Constructor to construct each element of the enum with its own sound file. */
     private SoundEffect(String soundFileName) {
-        try {
-            // Use URL (instead of File) to read from disk and JAR.
-            URL url = this.getClass().getClassLoader().getResource(soundFileName);
-            // Set up an audio input stream piped from the sound file.
-            AudioInputStream audioInputStream = AudioSystem.getAudioInputStream(url);
-            // Get a clip resource.
-            clip = AudioSystem.getClip();
-            // Open audio clip and load samples from the audio input stream.
-            clip.open(audioInputStream);
-        } catch (UnsupportedAudioFileException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
-        } catch (LineUnavailableException e) {
-            e.printStackTrace();
-        }
+        this.soundFileName = soundFileName;
+    }
+
+    public String getFileName() {
+        return soundFileName;
     }
 
-    /** Play or Re-play the sound effect from the beginning, by rewinding. */
+    /**
+     * Play the sound effect from the beginning, on the audio thread (see SoundPlayer).
+     * Repeats overlap rather than cut each other off.
+     */
     public void play() {
         if (volume != Volume.MUTE) {
-            if (clip.isRunning())
-                clip.stop();
-            clip.setFramePosition(0);
-
-            if (this == BACKGROUND) {
-                clip.loop(Clip.LOOP_CONTINUOUSLY); // looping backsound
-            } else {
-                clip.start(); // sound efek biasa
-            }
+            SoundPlayer.play(this);
         }
     }
-
-    /** Optional static method to pre-load all the sound files. */
-    static void initGame() {
-        values(); // calls the constructor for all the elements
-    }
 }
\ No newline at end of file
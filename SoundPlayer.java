@@ -0,0 +1,142 @@
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import javax.sound.sampled.Clip;
+
+/**
+ * Plays sound effects on a dedicated "audio" thread, so the EDT only enqueues a request.
+ * Each effect has a pool of Assets.VOICES_PER_SOUND clips: a request takes an idle voice,
+ * or, if all are busy, steals the one that started longest ago, so quick repeats overlap
+ * instead of cutting each other off. A voice counts as busy until its clip's length has
+ * passed since it was started (Clip.isRunning() is still false just after start()), and
+ * idle voices are taken in turn, from the one after the last voice started.
+ *
+ * Per effect it counts plays, steals and the most voices busy at once, and it records
+ * the delay from request to clip start; the statistics are printed when the program exits
+ * (read without locking, so they may miss a sound started at that very moment).
+ */
+public final class SoundPlayer {
+    /** A play request and when it was made */
+    private static final class Request {
+        final SoundEffect effect;
+        final long requestedNanos;
+
+        Request(SoundEffect effect, long requestedNanos) {
+            this.effect = effect;
+            this.requestedNanos = requestedNanos;
+        }
+    }
+
+    /** The voices of one effect and their statistics, used on the audio thread only */
+    private static final class Voices {
+        final Clip[] clips;
+        final long[] startedNanos;
+        final long[] lengthNanos;
+        /** The voice to try first */
+        int next;
+        long plays, steals;
+        int maxBusy;
+
+        Voices(Clip[] clips) {
+            this.clips = clips;
+            this.startedNanos = new long[clips.length];
+            this.lengthNanos = new long[clips.length];
+            for (int i = 0; i < clips.length; i++) {
+                lengthNanos[i] = Math.max(0, clips[i].getMicrosecondLength()) * 1000;
+                startedNanos[i] = System.nanoTime() - lengthNanos[i];
+            }
+        }
+
+        boolean isBusy(int voice, long now) {
+            return now - startedNanos[voice] < lengthNanos[voice];
+        }
+    }
+
+    private static final BlockingQueue<Request> requests = new LinkedBlockingQueue<>();
+    private static final Voices[] voices = new Voices[SoundEffect.values().length];
+    /** Written by the audio thread only */
+    private static final LatencyHistogram startDelay = new LatencyHistogram();
+
+    static {
+        Thread thread = new Thread(SoundPlayer::run, "audio");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(SoundPlayer::printStats, "audio-stats"));
+    }
+
+    private SoundPlayer() {}
+
+    /** Ask the audio thread to play the effect; returns at once */
+    public static void play(SoundEffect effect) {
+        requests.add(new Request(effect, System.nanoTime()));
+    }
+
+    private static void run() {
+        while (true) {
+            Request request;
+            try {
+                request = requests.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            Voices pool = voicesOf(request.effect);
+            if (pool == null) continue;
+            start(pool, request.requestedNanos);
+        }
+    }
+
+    /** Start the next idle voice, or restart the one playing longest */
+    private static void start(Voices pool, long requestedNanos) {
+        int idle = -1, oldest = -1, busy = 0;
+        long before = System.nanoTime();
+        for (int n = 0; n < pool.clips.length; n++) {
+            int i = (pool.next + n) % pool.clips.length;
+            if (pool.isBusy(i, before)) {
+                busy++;
+                if (oldest < 0 || pool.startedNanos[i] < pool.startedNanos[oldest]) oldest = i;
+            } else if (idle < 0) {
+                idle = i;
+            }
+        }
+        int chosen = (idle >= 0) ? idle : oldest;
+        Clip clip = pool.clips[chosen];
+        if (idle < 0) {
+            clip.stop();
+            pool.steals++;
+        } else {
+            busy++;
+        }
+        clip.setFramePosition(0);
+        clip.start();
+        long now = System.nanoTime();
+        pool.startedNanos[chosen] = now;
+        pool.next = (chosen + 1) % pool.clips.length;
+        pool.plays++;
+        pool.maxBusy = Math.max(pool.maxBusy, busy);
+        startDelay.record(now - requestedNanos);
+    }
+
+    /** The effect's voices, loaded on first use; null if the sound could not be loaded */
+    private static Voices voicesOf(SoundEffect effect) {
+        Voices pool = voices[effect.ordinal()];
+        if (pool == null) {
+            Clip[] clips = Assets.voices(effect.getFileName());
+            if (clips == null) return null;
+            pool = voices[effect.ordinal()] = new Voices(clips);
+        }
+        return pool;
+    }
+
+    private static void printStats() {
+        if (startDelay.getCount() == 0) return;
+        for (SoundEffect effect : SoundEffect.values()) {
+            Voices pool = voices[effect.ordinal()];
+            if (pool != null && pool.plays > 0) {
+                System.out.printf("Sound %s: %d plays, %d voices stolen, up to %d of %d voices busy%n",
+                        effect, pool.plays, pool.steals, pool.maxBusy, pool.clips.length);
+            }
+        }
+        System.out.printf("Sound start delay: p50 %d us, p99 %d us, max %d us%n",
+                startDelay.percentile(0.5), startDelay.percentile(0.99), startDelay.percentile(1));
+    }
+}
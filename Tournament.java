@@ -0,0 +1,280 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Headless self-play tournament: AIPlayer against AIPlayer on every board size and
+ * every pair of difficulties, each difficulty moving first in turn, over all cores.
+ * While it runs it prints the games per second, the move latency percentiles and the
+ * results of every matchup.
+ *
+ * Every worker thread plays with its own boards and AIPlayers and counts into its own
+ * counters; the reporting thread adds them up, so the workers never contend.
+ *
+ * Game g draws all its randomness from a stream seeded by the tournament seed and g, so
+ * any game can be replayed, unless a time budget cut its searches short: use -nodes on
+ * boards larger than 3x3 (the AIPlayers then also forget earlier games before each one).
+ *
+ * Run with: java Tournament [options]
+ *   -games N       games per matchup (default 100000)
+ *   -threads N     worker threads (default: all cores)
+ *   -boards LIST   board sizes as <rows>x<cols>k<win length>, comma separated (default 3x3k3)
+ *   -levels LIST   difficulties, comma separated (default EASY,MEDIUM,HARD)
+ *   -nodes N       search N nodes per move (MCTS: playouts) instead of the time budget
+ *   -interval S    seconds between reports (default 5)
+ *   -seed S        tournament seed (default: random, printed at the start)
+ *   -replay G      only play game G (numbered from 0) and print its moves
+ */
+public class Tournament {
+    /** Games a worker claims at a time, so the shared game counter is rarely touched */
+    private static final int CHUNK = 64;
+    /** Result columns of a matchup */
+    private static final int CROSS_WON = 0, DRAW = 1, NOUGHT_WON = 2, RESULTS = 3;
+
+    /** A board size and the difficulties playing CROSS (moving first) and NOUGHT */
+    private static final class Matchup {
+        final int board;
+        final AIPlayer.Difficulty cross, nought;
+
+        Matchup(int board, AIPlayer.Difficulty cross, AIPlayer.Difficulty nought) {
+            this.board = board;
+            this.cross = cross;
+            this.nought = nought;
+        }
+    }
+
+    private final int[][] boards;  // rows, cols, win length
+    private final AIPlayer.Difficulty[] levels;
+    private final Matchup[] matchups;
+    private final long totalGames;
+    private final long nodeBudget;
+    private final long seed;
+    private final AtomicLong nextGame = new AtomicLong();
+    private CountDownLatch finished;
+
+    private Tournament(int[][] boards, AIPlayer.Difficulty[] levels, long gamesPerMatchup, long nodeBudget,
+                       long seed) {
+        this.boards = boards;
+        this.levels = levels;
+        this.nodeBudget = nodeBudget;
+        this.seed = seed;
+        List<Matchup> list = new ArrayList<>();
+        for (int board = 0; board < boards.length; board++) {
+            for (AIPlayer.Difficulty cross : levels) {
+                for (AIPlayer.Difficulty nought : levels) {
+                    list.add(new Matchup(board, cross, nought));
+                }
+            }
+        }
+        matchups = list.toArray(new Matchup[0]);
+        totalGames = gamesPerMatchup * matchups.length;
+    }
+
+    /** Plays games until none are left; its counters are written by its own thread only */
+    private final class Worker implements Runnable {
+        final AtomicLongArray results = new AtomicLongArray(matchups.length * RESULTS);
+        final LatencyHistogram latency = new LatencyHistogram();
+        private final Board[] workerBoards = new Board[boards.length];
+        /** [board][level][0 = CROSS, 1 = NOUGHT], created on first use */
+        private final AIPlayer[][][] players = new AIPlayer[boards.length][levels.length][2];
+
+        @Override
+        public void run() {
+            long first;
+            while ((first = nextGame.getAndAdd(CHUNK)) < totalGames) {
+                long end = Math.min(first + CHUNK, totalGames);
+                for (long game = first; game < end; game++) {
+                    int matchup = matchupOf(game);
+                    int result = play(game, null);
+                    int slot = matchup * RESULTS + result;
+                    results.lazySet(slot, results.get(slot) + 1);
+                }
+            }
+            finished.countDown();
+        }
+
+        /** Play the given game from an empty board, returning its result column; moves may be null */
+        int play(long game, List<Move> moves) {
+            Matchup matchup = matchups[matchupOf(game)];
+            Board board = boardOf(matchup.board);
+            board.newGame();
+            AIPlayer cross = playerOf(matchup.board, matchup.cross, Seed.CROSS);
+            AIPlayer nought = playerOf(matchup.board, matchup.nought, Seed.NOUGHT);
+            if (nodeBudget > 0) {
+                // A node-limited search goes deeper with a warm table; searches that always
+                // finish (fixed depth, 3x3) pick the same move either way and keep it
+                cross.newGame();
+                nought.newGame();
+            }
+            SplittableRandom random = randomOf(game);
+            cross.setRandom(random.split());
+            nought.setRandom(random.split());
+            Seed turn = Seed.CROSS;
+            State state = State.PLAYING;
+            while (state == State.PLAYING) {
+                AIPlayer ai = (turn == Seed.CROSS) ? cross : nought;
+                Move move = ai.getAIMove();
+                latency.record(ai.getElapsedNanos());
+                if (moves != null) moves.add(move);
+                state = board.stepGame(turn, move.row, move.col);
+                turn = (turn == Seed.CROSS) ? Seed.NOUGHT : Seed.CROSS;
+            }
+            return (state == State.CROSS_WON) ? CROSS_WON : (state == State.DRAW) ? DRAW : NOUGHT_WON;
+        }
+
+        private Board boardOf(int index) {
+            if (workerBoards[index] == null) {
+                workerBoards[index] = new Board(boards[index][0], boards[index][1], boards[index][2]);
+            }
+            return workerBoards[index];
+        }
+
+        private AIPlayer playerOf(int board, AIPlayer.Difficulty level, Seed seed) {
+            int side = (seed == Seed.CROSS) ? 0 : 1;
+            AIPlayer[] byLevel = players[board][indexOf(level)];
+            if (byLevel[side] == null) {
+                byLevel[side] = new AIPlayer(boardOf(board), seed, level);
+                if (nodeBudget > 0) {
+                    byLevel[side].setBudget(0, nodeBudget, level.getMaxDepth());
+                }
+            }
+            return byLevel[side];
+        }
+    }
+
+    /** Games are dealt round-robin, so every matchup progresses evenly */
+    private int matchupOf(long game) {
+        return (int) (game % matchups.length);
+    }
+
+    /** Random stream of the given game, the same whichever worker plays it */
+    private SplittableRandom randomOf(long game) {
+        long z = seed + game * 0x9E3779B97F4A7C15L;  // SplitMix64 finalizer of seed and game
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return new SplittableRandom(z ^ (z >>> 31));
+    }
+
+    /** Play a single game on the calling thread and print it */
+    private void replay(long game) {
+        Matchup matchup = matchups[matchupOf(game)];
+        int[] size = boards[matchup.board];
+        List<Move> moves = new ArrayList<>();
+        int result = new Worker().play(game, moves);
+        System.out.printf("Game %d: %dx%d k%d, %s (X) vs %s (O)%n", game, size[0], size[1], size[2],
+                matchup.cross, matchup.nought);
+        for (int i = 0; i < moves.size(); i++) {
+            System.out.printf("  %2d. %s %s%n", i + 1, (i % 2 == 0) ? "X" : "O", moves.get(i));
+        }
+        System.out.println((result == CROSS_WON) ? "X won" : (result == DRAW) ? "Draw" : "O won");
+    }
+
+    private int indexOf(AIPlayer.Difficulty level) {
+        for (int i = 0; i < levels.length; i++) {
+            if (levels[i] == level) return i;
+        }
+        throw new IllegalArgumentException("Unknown level " + level);
+    }
+
+    /** Run the tournament on the given number of threads, reporting every intervalMillis */
+    private void run(int threads, long intervalMillis) throws InterruptedException {
+        finished = new CountDownLatch(threads);
+        Worker[] workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker();
+            Thread thread = new Thread(workers[i], "tournament-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        long start = System.nanoTime();
+        long lastNanos = start, lastGames = 0;
+        boolean running = true;
+        while (running) {
+            running = !finished.await(intervalMillis, TimeUnit.MILLISECONDS);
+            long now = System.nanoTime();
+            lastGames = report(workers, now - start, now - lastNanos, lastGames);
+            lastNanos = now;
+        }
+    }
+
+    /** Print the merged counters; returns the number of games played so far */
+    private long report(Worker[] workers, long elapsedNanos, long intervalNanos, long lastGames) {
+        long[] results = new long[matchups.length * RESULTS];
+        LatencyHistogram latency = new LatencyHistogram();
+        for (Worker worker : workers) {
+            for (int i = 0; i < results.length; i++) {
+                results[i] += worker.results.get(i);
+            }
+            worker.latency.addTo(latency);
+        }
+        long games = 0;
+        for (long count : results) {
+            games += count;
+        }
+        System.out.printf("[%7.1f s] %,d of %,d games, %,.0f games/s, %,d moves, latency us p50 %,d p90 %,d p99 %,d p99.9 %,d max %,d%n",
+                elapsedNanos / 1e9, games, totalGames, (games - lastGames) * 1e9 / Math.max(1, intervalNanos),
+                latency.getCount(), latency.percentile(0.5), latency.percentile(0.9),
+                latency.percentile(0.99), latency.percentile(0.999), latency.percentile(1));
+        for (int i = 0; i < matchups.length; i++) {
+            Matchup matchup = matchups[i];
+            int[] size = boards[matchup.board];
+            System.out.printf("  %3dx%-3d k%-2d %-6s (X) vs %-6s (O):  X won %,10d  draw %,10d  O won %,10d%n",
+                    size[0], size[1], size[2], matchup.cross, matchup.nought,
+                    results[i * RESULTS + CROSS_WON], results[i * RESULTS + DRAW], results[i * RESULTS + NOUGHT_WON]);
+        }
+        return games;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        long games = 100_000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String boardList = "3x3k3";
+        String levelList = "EASY,MEDIUM,HARD";
+        long nodes = 0;
+        double interval = 5;
+        long seed = new SplittableRandom().nextLong();
+        long replay = -1;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "-games": games = Long.parseLong(args[i + 1]); break;
+                case "-threads": threads = Integer.parseInt(args[i + 1]); break;
+                case "-boards": boardList = args[i + 1]; break;
+                case "-levels": levelList = args[i + 1]; break;
+                case "-nodes": nodes = Long.parseLong(args[i + 1]); break;
+                case "-interval": interval = Double.parseDouble(args[i + 1]); break;
+                case "-seed": seed = Long.parseLong(args[i + 1]); break;
+                case "-replay": replay = Long.parseLong(args[i + 1]); break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        String[] sizes = boardList.split(",");
+        int[][] boards = new int[sizes.length][];
+        for (int i = 0; i < sizes.length; i++) {
+            int x = sizes[i].indexOf('x'), k = sizes[i].indexOf('k');
+            boards[i] = new int[] {Integer.parseInt(sizes[i].substring(0, x)),
+                    Integer.parseInt(sizes[i].substring(x + 1, k)), Integer.parseInt(sizes[i].substring(k + 1))};
+            new Board(boards[i][0], boards[i][1], boards[i][2]);  // fail fast on an invalid size
+        }
+        String[] names = levelList.split(",");
+        AIPlayer.Difficulty[] levels = new AIPlayer.Difficulty[names.length];
+        for (int i = 0; i < names.length; i++) {
+            levels[i] = AIPlayer.Difficulty.valueOf(names[i].trim().toUpperCase());
+        }
+
+        Tournament tournament = new Tournament(boards, levels, games, nodes, seed);
+        if (replay >= 0) {
+            tournament.replay(replay);
+            return;
+        }
+        System.out.printf("%d matchups, %,d games on %d threads, seed %d%n", tournament.matchups.length,
+                tournament.totalGames, threads, seed);
+        tournament.run(Math.max(1, threads), (long) (interval * 1000));
+    }
+}
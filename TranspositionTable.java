@@ -0,0 +1,100 @@
+/**
+ * Fixed-size transposition table for the alpha-beta search, keyed by the
+ * canonical ZobristHash of a position.
+ *
+ * Entries are packed into two primitive arrays, so storing allocates nothing.
+ * The table is split into buckets of two slots. A position already in the
+ * bucket is overwritten in place. Otherwise the new entry goes into the slot
+ * that is cheapest to lose: one left over from an earlier search first, then
+ * the one with the smaller draft (fewer plies searched below it).
+ *
+ * Every entry is tagged with the epoch it was stored in, and clear() just starts a new
+ * epoch, so a table can be emptied before every game at no cost.
+ */
+public class TranspositionTable {
+    /** Kind of score stored in an entry */
+    public static final int EXACT = 0;
+    public static final int LOWER_BOUND = 1;  // real score >= stored score (fail high)
+    public static final int UPPER_BOUND = 2;  // real score <= stored score (fail low)
+
+    private final long[] keys;
+    /** Packed as epoch (16 bits) | score (16 bits) | flag (2 bits) | draft (8 bits) | generation (8 bits) */
+    private final long[] data;
+    private final int bucketMask;
+    private int generation;
+    /** Only entries of this epoch (1 to MAX_EPOCH) are in the table */
+    private long epoch = 1;
+    private static final long MAX_EPOCH = 0xFFFF;
+
+    /** Constructor with room for at least the given number of entries (rounded up to a power of two) */
+    public TranspositionTable(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        keys = new long[size];
+        data = new long[size];
+        bucketMask = (size >> 1) - 1;
+    }
+
+    /** Start a new search; entries of older searches become the first to be replaced */
+    public void newSearch() {
+        generation = (generation + 1) & 0xFF;
+    }
+
+    /** Remove every entry (only rewriting the arrays once every MAX_EPOCH calls) */
+    public void clear() {
+        if (++epoch > MAX_EPOCH) {
+            java.util.Arrays.fill(keys, 0L);
+            java.util.Arrays.fill(data, 0L);
+            epoch = 1;
+        }
+    }
+
+    /** Slot holding the given key, or -1 if it is not in the table */
+    public int probe(long key) {
+        int slot = bucketOf(key);
+        if (keys[slot] == key && isLive(slot)) return slot;
+        if (keys[slot + 1] == key && isLive(slot + 1)) return slot + 1;
+        return -1;
+    }
+
+    public int scoreAt(int slot) {
+        return (short) (data[slot] >>> 18);
+    }
+
+    public int flagAt(int slot) {
+        return (int) (data[slot] >>> 16) & 0x3;
+    }
+
+    public int draftAt(int slot) {
+        return (int) (data[slot] >>> 8) & 0xFF;
+    }
+
+    /** Store the result of searching the position with the given key draft plies deep */
+    public void store(long key, int score, int flag, int draft) {
+        int slot = bucketOf(key);
+        if (keys[slot] != key && (keys[slot + 1] == key || worthLess(slot + 1, slot))) {
+            slot++;
+        }
+        keys[slot] = key;
+        // The epoch (never 0) marks the slot as used, so an all-zero key is still a valid key
+        data[slot] = (epoch << 34) | ((score & 0xFFFFL) << 18) | ((long) flag << 16)
+                | ((long) Math.min(draft, 0xFF) << 8) | generation;
+    }
+
+    private boolean isLive(int slot) {
+        return (data[slot] >>> 34) == epoch;
+    }
+
+    private int bucketOf(long key) {
+        return ((int) (key ^ (key >>> 32)) & bucketMask) << 1;
+    }
+
+    /** Is slot a cheaper to overwrite than slot b? */
+    private boolean worthLess(int a, int b) {
+        if (!isLive(a)) return true;
+        if (!isLive(b)) return false;
+        boolean staleA = (data[a] & 0xFF) != generation;
+        boolean staleB = (data[b] & 0xFF) != generation;
+        if (staleA != staleB) return staleA;
+        return draftAt(a) < draftAt(b);
+    }
+}
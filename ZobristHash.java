@@ -0,0 +1,80 @@
+import java.util.SplittableRandom;
+
+/**
+ * Incremental Zobrist hashes of a position under every symmetry of the board
+ * (the 8 rotations and reflections of a square, or the 4 of a rectangle).
+ * The smallest of them is the canonical hash: it is the same for a position
+ * and all of its rotated or reflected copies, so they share one table entry.
+ */
+public class ZobristHash {
+    /** Fixed seed, so hashes are the same from run to run */
+    private static final long SEED = 0x5DEECE66DL;
+
+    private final int symmetries;
+    /** Cell index after applying each symmetry: [symmetry][cell] */
+    private final int[][] symmetryIndex;
+    /** Random key for each seed on each cell: [0 = CROSS, 1 = NOUGHT][cell] */
+    private final long[][] keys;
+    /** Mixed in when CROSS is to move */
+    private final long sideKey;
+    /** Running hash of the position as seen through each symmetry */
+    private final long[] hashes;
+
+    /** Constructor for a rows-by-cols board */
+    public ZobristHash(int rows, int cols) {
+        int cells = rows * cols;
+        symmetries = (rows == cols) ? 8 : 4;
+        symmetryIndex = new int[symmetries][cells];
+        for (int row = 0; row < rows; ++row) {
+            for (int col = 0; col < cols; ++col) {
+                int r = rows - 1 - row, c = cols - 1 - col;
+                int[] images = (rows == cols)
+                        ? new int[]{row * cols + col, col * cols + r, r * cols + c, c * cols + row,
+                                    row * cols + c, r * cols + col, col * cols + row, c * cols + r}
+                        : new int[]{row * cols + col, row * cols + c, r * cols + col, r * cols + c};
+                for (int s = 0; s < symmetries; ++s) {
+                    symmetryIndex[s][row * cols + col] = images[s];
+                }
+            }
+        }
+
+        SplittableRandom random = new SplittableRandom(SEED);
+        keys = new long[2][cells];
+        for (int cell = 0; cell < cells; ++cell) {
+            keys[0][cell] = random.nextLong();
+            keys[1][cell] = random.nextLong();
+        }
+        sideKey = random.nextLong();
+        hashes = new long[symmetries];
+    }
+
+    /** Recompute all the hashes from the board's bitboards */
+    public void reset(Board board) {
+        java.util.Arrays.fill(hashes, 0L);
+        for (int word = 0; word < board.wordCount(); ++word) {
+            for (long bits = board.crossBits[word]; bits != 0; bits &= bits - 1) {
+                toggle(Seed.CROSS, (word << 6) + Long.numberOfTrailingZeros(bits));
+            }
+            for (long bits = board.noughtBits[word]; bits != 0; bits &= bits - 1) {
+                toggle(Seed.NOUGHT, (word << 6) + Long.numberOfTrailingZeros(bits));
+            }
+        }
+    }
+
+    /** Add or remove (XOR is its own inverse) the player's seed on the given cell */
+    public void toggle(Seed player, int index) {
+        long[] playerKeys = keys[(player == Seed.CROSS) ? 0 : 1];
+        for (int s = 0; s < symmetries; ++s) {
+            hashes[s] ^= playerKeys[symmetryIndex[s][index]];
+        }
+    }
+
+    /** Canonical hash of the current position with the given side to move */
+    public long canonical(Seed toMove) {
+        long min = hashes[0];
+        for (int s = 1; s < symmetries; ++s) {
+            min = Math.min(min, hashes[s]);
+        }
+        return (toMove == Seed.CROSS) ? min ^ sideKey : min;
+    }
+}
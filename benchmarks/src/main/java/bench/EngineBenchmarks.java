@@ -0,0 +1,215 @@
+package bench;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmarks of the engine hot paths: Board.stepGame, AIPlayer.evaluateBoard,
+ * a full AIPlayer.minimaxMove and AIPlayer.getRandomMove, on fixed positions.
+ *
+ * The engine lives in the default package, which code in a named package (JMH's
+ * generated code included) cannot name, so it is reached through method handles.
+ * They are static finals, which the JIT inlines like direct calls.
+ *
+ * A position is "<rows>x<cols>k<win length>:<cell>,<cell>,..." with the cells played
+ * so far as row-major indices, CROSS first. Every AIPlayer plays HARD for the side to move.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineBenchmarks {
+    private static final Class<?> BOARD = engineClass("Board");
+    private static final Class<?> AI_PLAYER = engineClass("AIPlayer");
+    private static final Class<?> SEED = engineClass("Seed");
+    private static final Class<?> STATE = engineClass("State");
+    private static final Class<?> DIFFICULTY = engineClass("AIPlayer$Difficulty");
+    private static final Class<?> MOVE = engineClass("Move");
+
+    private static final MethodHandle NEW_BOARD = constructor(BOARD, int.class, int.class, int.class);
+    private static final MethodHandle NEW_AI_PLAYER = constructor(AI_PLAYER, BOARD, SEED, DIFFICULTY);
+    private static final MethodHandle STEP_GAME = method(BOARD, "stepGame", STATE, SEED, int.class, int.class);
+    private static final MethodHandle CLEAR = method(BOARD, "clear", void.class, int.class);
+    private static final MethodHandle IS_EMPTY = method(BOARD, "isEmpty", boolean.class, int.class);
+    private static final MethodHandle EVALUATE_BOARD = method(AI_PLAYER, "evaluateBoard", STATE);
+    private static final MethodHandle MINIMAX_MOVE = method(AI_PLAYER, "minimaxMove", MOVE);
+    private static final MethodHandle RANDOM_MOVE = method(AI_PLAYER, "getRandomMove", MOVE);
+    private static final MethodHandle TABLE = getter(AI_PLAYER, "table", engineClass("TranspositionTable"));
+    private static final MethodHandle CLEAR_TABLE = method(engineClass("TranspositionTable"), "clear", void.class);
+
+    /** A fixed position with an AIPlayer for the side to move */
+    static final class Position {
+        Object board;
+        Object aiPlayer;
+        Object sideToMove;
+        int cols;
+        int[] emptyCells;
+        int next;
+
+        Position(String position) throws Throwable {
+            String[] parts = position.split(":", -1);
+            int x = parts[0].indexOf('x');
+            int k = parts[0].indexOf('k');
+            int rows = Integer.parseInt(parts[0].substring(0, x));
+            cols = Integer.parseInt(parts[0].substring(x + 1, k));
+            int winLength = Integer.parseInt(parts[0].substring(k + 1));
+            board = NEW_BOARD.invoke(rows, cols, winLength);
+            Object cross = enumConstant(SEED, "CROSS");
+            Object nought = enumConstant(SEED, "NOUGHT");
+            int played = 0;
+            for (String cell : parts[1].split(",")) {
+                if (cell.isEmpty()) continue;
+                int index = Integer.parseInt(cell);
+                STEP_GAME.invoke(board, (played % 2 == 0) ? cross : nought, index / cols, index % cols);
+                played++;
+            }
+            sideToMove = (played % 2 == 0) ? cross : nought;
+            aiPlayer = NEW_AI_PLAYER.invoke(board, sideToMove, enumConstant(DIFFICULTY, "HARD"));
+
+            int empties = 0;
+            int[] cells = new int[rows * cols];
+            for (int index = 0; index < cells.length; index++) {
+                if ((boolean) IS_EMPTY.invoke(board, index)) cells[empties++] = index;
+            }
+            emptyCells = Arrays.copyOf(cells, empties);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class BoardState {
+        @Param({"3x3k3:", "3x3k3:4,0", "7x7k4:24,25,31,17", "15x15k5:112,113,97,127,98,128"})
+        public String position;
+
+        Position at;
+
+        @Setup
+        public void setUp() throws Throwable {
+            at = new Position(position);
+        }
+    }
+
+    /**
+     * A full exhaustive search is only feasible on 3x3, so it has its own positions. The
+     * transposition table is cleared before every call, so each search starts cold.
+     */
+    @State(Scope.Thread)
+    public static class MinimaxState {
+        @Param({"3x3k3:", "3x3k3:4", "3x3k3:0,4", "3x3k3:4,0,8"})
+        public String position;
+
+        Position at;
+
+        @Setup
+        public void setUp() throws Throwable {
+            at = new Position(position);
+        }
+
+        @Setup(Level.Invocation)
+        public void clearTable() throws Throwable {
+            CLEAR_TABLE.invoke(TABLE.invoke(at.aiPlayer));
+        }
+    }
+
+    /** Play each empty cell in turn for the side to move, then take it back */
+    @Benchmark
+    public Object stepGame(BoardState state) throws Throwable {
+        Position at = state.at;
+        int index = at.emptyCells[at.next];
+        at.next = (at.next + 1 == at.emptyCells.length) ? 0 : at.next + 1;
+        Object result = STEP_GAME.invoke(at.board, at.sideToMove, index / at.cols, index % at.cols);
+        CLEAR.invoke(at.board, index);
+        return result;
+    }
+
+    @Benchmark
+    public Object evaluateBoard(BoardState state) throws Throwable {
+        return EVALUATE_BOARD.invoke(state.at.aiPlayer);
+    }
+
+    @Benchmark
+    public Object getRandomMove(BoardState state) throws Throwable {
+        return RANDOM_MOVE.invoke(state.at.aiPlayer);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object minimaxMove(MinimaxState state) throws Throwable {
+        return MINIMAX_MOVE.invoke(state.at.aiPlayer);
+    }
+
+    /**
+     * Run every benchmark with the GC profiler (allocation per operation) and save the
+     * results as JSON under results/, one file per run, so runs can be compared over time.
+     * Extra arguments are passed on as JMH command-line options.
+     */
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        String stamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        new File("results").mkdirs();
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(EngineBenchmarks.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("results/jmh-" + stamp + ".json")
+                .jvmArgsAppend("-Djava.awt.headless=true")
+                .build();
+        new Runner(options).run();
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object enumConstant(Class<?> type, String name) {
+        return Enum.valueOf((Class) type, name);
+    }
+
+    private static Class<?> engineClass(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandles.Lookup lookupIn(Class<?> type) throws IllegalAccessException {
+        return MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+    }
+
+    private static MethodHandle constructor(Class<?> type, Class<?>... parameters) {
+        try {
+            return lookupIn(type).findConstructor(type, MethodType.methodType(void.class, parameters));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle method(Class<?> type, String name, Class<?> returnType, Class<?>... parameters) {
+        try {
+            return lookupIn(type).findVirtual(type, name, MethodType.methodType(returnType, parameters));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle getter(Class<?> type, String name, Class<?> fieldType) {
+        try {
+            return lookupIn(type).findGetter(type, name, fieldType);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}